@@ -201,12 +201,7 @@ public abstract class AbstractWagon implements Wagon {
 			AuthorizationException {
 		Resource resource = new Resource(resourceName);
 		try {
-			if (isRemoteResourceNewer(resourceName, timestamp)) {
-				get(resourceName, destination);
-				return true;
-			} else {
-				return false;
-			}
+			return getResourceIfNewer(resourceName, destination, timestamp);
 		} catch (TransferFailedException e) {
 			throw e;
 		} catch (ResourceDoesNotExistException e) {
@@ -219,6 +214,29 @@ public abstract class AbstractWagon implements Wagon {
 		}
 	}
 
+	/**
+	 * Download the resource if it is newer than the timestamp. This implementation checks the timestamp and then downloads the resource with a separate request. Subclasses that
+	 * can do both with a single request should override this and fire the transfer events themselves.
+	 * 
+	 * @param resourceName
+	 *            The name of the remote resource to read
+	 * @param destination
+	 *            The local file to write to
+	 * @param timestamp
+	 *            The timestamp to compare against
+	 * @return true if the resource was newer and has been downloaded
+	 * @throws Exception
+	 *             Implementations can throw any exception and it will be handled by the base class
+	 */
+	protected boolean getResourceIfNewer(String resourceName, File destination, long timestamp) throws Exception {
+		if (isRemoteResourceNewer(resourceName, timestamp)) {
+			get(resourceName, destination);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
 	@Deprecated
 	public final void openConnection() throws ConnectionException, AuthenticationException {
 		// Nothing to do here (never called by the wagon manager)
@@ -232,6 +250,7 @@ public abstract class AbstractWagon implements Wagon {
 		context.setListeners(transferListeners);
 		context.setDestination(destination);
 		context.setSource(source);
+		context.setLength(source.length());
 		return context;
 	}
 
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed size byte buffers that are recycled between transfers instead of being allocated for every file. Direct buffers are expensive to allocate and are only
+ * released by the garbage collector, so pooling them is what makes them worthwhile.
+ */
+public class BufferPool {
+
+	public static final int DEFAULT_MAX_POOLED = 32;
+
+	private static final Map<String, BufferPool> INSTANCES = new HashMap<String, BufferPool>();
+
+	private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger pooled = new AtomicInteger();
+	private final int bufferSize;
+	private final boolean direct;
+	private final int maxPooled;
+
+	protected BufferPool(int bufferSize, boolean direct) {
+		this(bufferSize, direct, DEFAULT_MAX_POOLED);
+	}
+
+	protected BufferPool(int bufferSize, boolean direct, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.direct = direct;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Return the pool shared by everything in this JVM that uses buffers of this size and kind, so buffers are reused from one connection to the next
+	 */
+	public static synchronized BufferPool getInstance(int bufferSize, boolean direct) {
+		String key = bufferSize + ":" + direct;
+		BufferPool pool = INSTANCES.get(key);
+		if (pool == null) {
+			pool = new BufferPool(bufferSize, direct);
+			INSTANCES.put(key, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Return a cleared buffer from the pool, allocating a new one if the pool is empty
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) {
+			return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		}
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Hand a buffer back to the pool. Buffers beyond the pool capacity are left for the garbage collector.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() != bufferSize) {
+			return;
+		}
+		if (pooled.incrementAndGet() > maxPooled) {
+			pooled.decrementAndGet();
+			return;
+		}
+		buffers.offer(buffer);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.amazonaws.AmazonServiceException;
+
+/**
+ * <p>
+ * Additive increase, multiplicative decrease control of how many uploads run at once, in the style of TCP congestion control. Concurrency starts at the minimum and grows by one
+ * for every successful upload (slow start) until it first runs into trouble. From then on it grows by one for every window's worth of successful uploads, and only while
+ * latency stays within twice its moving average.
+ * </p>
+ *
+ * <p>
+ * A throttling response from S3 (503 SlowDown and friends) or a timeout halves concurrency. Further trouble within the cooldown period is treated as part of the same event, so a
+ * burst of failures from requests that were already in flight doesn't collapse concurrency to one.
+ * </p>
+ */
+public class ConcurrencyController {
+
+	public static final long DEFAULT_COOLDOWN = 2000;
+	private static final int SERVICE_UNAVAILABLE = 503;
+	private static final List<String> THROTTLING_CODES = Arrays.asList("SlowDown", "Throttling", "ThrottlingException", "RequestTimeout");
+	private static final double ALPHA = 0.2;
+
+	int min;
+	int max;
+	int limit;
+	int threshold;
+	int inFlight;
+	int successes;
+	int peak;
+	int congestion;
+	double latency = -1;
+	long cooldown = DEFAULT_COOLDOWN;
+	long lastDecrease;
+
+	public ConcurrencyController(int min, int max) {
+		this.max = Math.max(max, 1);
+		this.min = Math.max(Math.min(min, this.max), 1);
+		this.limit = this.min;
+		this.threshold = this.max;
+		this.peak = this.limit;
+	}
+
+	/**
+	 * Wait until another upload is allowed to start
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while (inFlight >= limit) {
+			wait();
+		}
+		inFlight++;
+	}
+
+	public synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+
+	/**
+	 * Record an upload that succeeded after <code>millis</code>
+	 */
+	public synchronized void onSuccess(long millis) {
+		boolean healthy = latency < 0 || millis <= 2 * latency;
+		latency = latency < 0 ? millis : ALPHA * millis + (1 - ALPHA) * latency;
+		if (!healthy || limit >= max) {
+			return;
+		}
+		if (limit < threshold || ++successes >= limit) {
+			successes = 0;
+			limit++;
+			peak = Math.max(peak, limit);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Record a throttling response or timeout
+	 */
+	public synchronized void onCongestion() {
+		congestion++;
+		long now = System.currentTimeMillis();
+		if (now - lastDecrease < cooldown) {
+			return;
+		}
+		lastDecrease = now;
+		threshold = Math.max(limit / 2, 1);
+		limit = threshold;
+		successes = 0;
+	}
+
+	/**
+	 * Return true if the exception means S3, or the network path to it, is overloaded rather than that the request itself was bad
+	 */
+	public boolean isCongestion(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof AmazonServiceException) {
+				AmazonServiceException ase = (AmazonServiceException) cause;
+				if (ase.getStatusCode() == SERVICE_UNAVAILABLE || THROTTLING_CODES.contains(ase.getErrorCode())) {
+					return true;
+				}
+			}
+			// Covers socket read timeouts as well as http client connect and pool timeouts
+			if (cause instanceof InterruptedIOException && !(cause.getClass() == InterruptedIOException.class)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	public synchronized int getPeak() {
+		return peak;
+	}
+
+	public synchronized int getCongestion() {
+		return congestion;
+	}
+
+	public synchronized String getSummary() {
+		return "Concurrency: " + limit + " (peak " + peak + ", throttled " + congestion + "x)";
+	}
+
+	public long getCooldown() {
+		return cooldown;
+	}
+
+	public void setCooldown(long cooldown) {
+		this.cooldown = cooldown;
+	}
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import org.kuali.common.threads.listener.PercentCompleteListener;
+import org.kuali.common.threads.listener.ProgressEvent;
+
+/**
+ * Prints the usual row of progress dots, with the current concurrency level in brackets each time the congestion controller has changed it
+ */
+public class ConcurrencyProgressListener<T> extends PercentCompleteListener<T> {
+
+	private static final int MIN_EVENTS_BETWEEN_UPDATES = 10;
+
+	ConcurrencyController controller;
+	int printed;
+	int events;
+
+	public ConcurrencyProgressListener(ConcurrencyController controller) {
+		this.controller = controller;
+	}
+
+	@Override
+	public void progressStarted() {
+		super.progressStarted();
+		printed = controller.getLimit();
+		getOut().print("(" + printed + ")");
+	}
+
+	@Override
+	public void progressOccurred(int progress, int total, ProgressEvent<T> event) {
+		int limit = controller.getLimit();
+		if (limit != printed && ++events >= MIN_EVENTS_BETWEEN_UPDATES) {
+			getOut().print("(" + limit + ")");
+			printed = limit;
+			events = 0;
+		}
+		super.progressOccurred(progress, total, event);
+	}
+
+}
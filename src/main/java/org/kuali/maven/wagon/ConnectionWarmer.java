@@ -0,0 +1,75 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+
+/**
+ * Opens connections to a bucket ahead of time so the first uploads don't all pay for a DNS lookup and a TLS handshake at the same moment. Each connection is opened by a cheap
+ * request that lists zero objects. The requests are started together so each one needs its own connection, and every connection goes back to the pool of the client when its
+ * request completes.
+ */
+public class ConnectionWarmer {
+
+	private static final Logger log = LoggerFactory.getLogger(ConnectionWarmer.class);
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	/**
+	 * Start opening <code>connections</code> connections in the background and return straight away
+	 */
+	public static void start(AmazonS3 client, String bucketName, int connections) {
+		CountDownLatch ready = new CountDownLatch(connections);
+		for (int i = 0; i < connections; i++) {
+			Thread thread = new Thread(new Warmer(client, bucketName, ready), "S3-Warm-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	protected static class Warmer implements Runnable {
+		AmazonS3 client;
+		String bucketName;
+		CountDownLatch ready;
+
+		protected Warmer(AmazonS3 client, String bucketName, CountDownLatch ready) {
+			this.client = client;
+			this.bucketName = bucketName;
+			this.ready = ready;
+		}
+
+		public void run() {
+			try {
+				// Wait for the others so the requests overlap and can't share a connection
+				ready.countDown();
+				ready.await();
+				client.listObjects(new ListObjectsRequest(bucketName, null, null, null, 0));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (AmazonClientException e) {
+				log.debug("Unable to open a connection to " + bucketName + ": " + e.getMessage());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Remembers the digests of the files uploaded during a session, by key. Maven uploads the checksum files for an artifact right after the artifact itself, so when a key like
+ * <code>foo.jar.sha1</code> is uploaded the checksum it contains can be compared with what was actually sent for <code>foo.jar</code>, without reading the artifact again.
+ */
+public class DigestRegistry {
+
+	private final Map<String, Digests> digests = new ConcurrentHashMap<String, Digests>();
+
+	public void put(String key, Digests digests) {
+		this.digests.put(key, digests);
+	}
+
+	/**
+	 * If <code>key</code> is a checksum file for something uploaded during this session, return the checksum it should contain. Otherwise return null.
+	 */
+	public String getExpected(String key) {
+		int dot = key.lastIndexOf('.');
+		if (dot == -1) {
+			return null;
+		}
+		Digests uploaded = digests.get(key.substring(0, dot));
+		return uploaded == null ? null : uploaded.get(key.substring(dot + 1));
+	}
+
+	/**
+	 * Return the checksum in the content of a checksum file. Some tools write the file name after the checksum, so only the first word counts.
+	 */
+	public static String parse(String content) {
+		String trimmed = StringUtils.trimToEmpty(content);
+		int space = StringUtils.indexOfAny(trimmed, " \t\r\n");
+		return space == -1 ? trimmed : trimmed.substring(0, space);
+	}
+
+	public int size() {
+		return digests.size();
+	}
+
+	public void clear() {
+		digests.clear();
+	}
+
+}
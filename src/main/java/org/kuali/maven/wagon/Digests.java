@@ -0,0 +1,144 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.hash.HashCode;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * The MD5, SHA-1 and SHA-256 of some content, calculated together in a single pass over it. The MD5 is sent to S3 as <code>Content-MD5</code> so S3 rejects a body that was
+ * corrupted on the way, and all three are what Maven puts in the <code>.md5</code>, <code>.sha1</code> and <code>.sha256</code> files it uploads next to an artifact. Content
+ * that arrives in pieces, in order, is digested with a {@link Digester}.
+ */
+public class Digests {
+
+	public static final String MD5 = "md5";
+	public static final String SHA1 = "sha1";
+	public static final String SHA256 = "sha256";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final HashCode md5;
+	private final HashCode sha1;
+	private final HashCode sha256;
+
+	protected Digests(MessageDigest md5, MessageDigest sha1, MessageDigest sha256) {
+		this.md5 = HashCode.fromBytes(md5.digest());
+		this.sha1 = HashCode.fromBytes(sha1.digest());
+		this.sha256 = HashCode.fromBytes(sha256.digest());
+	}
+
+	/**
+	 * Read the file once, digesting it with all three algorithms as it goes
+	 */
+	public static Digests compute(File file) throws IOException {
+		Digester digester = new Digester();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(file.length(), 1))];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digester.update(buffer, 0, read);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return digester.getDigests();
+	}
+
+	/**
+	 * Digest <code>length</code> bytes of an array starting at <code>offset</code>
+	 */
+	public static Digests compute(byte[] bytes, int offset, int length) {
+		Digester digester = new Digester();
+		digester.update(bytes, offset, length);
+		return digester.getDigests();
+	}
+
+	/**
+	 * Return the digest for a checksum file extension (<code>md5</code>, <code>sha1</code> or <code>sha256</code>) as lower case hex, or null for any other extension
+	 */
+	public String get(String extension) {
+		if (MD5.equals(extension)) {
+			return md5.toString();
+		} else if (SHA1.equals(extension)) {
+			return sha1.toString();
+		} else if (SHA256.equals(extension)) {
+			return sha256.toString();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Return the MD5 base64 encoded, the way the <code>Content-MD5</code> header wants it
+	 */
+	public String getContentMd5() {
+		return BaseEncoding.base64().encode(md5.asBytes());
+	}
+
+	public HashCode getMd5() {
+		return md5;
+	}
+
+	public HashCode getSha1() {
+		return sha1;
+	}
+
+	public HashCode getSha256() {
+		return sha256;
+	}
+
+	/**
+	 * Digests content handed to it a piece at a time
+	 */
+	public static class Digester {
+		private final MessageDigest md5 = newDigest("MD5");
+		private final MessageDigest sha1 = newDigest("SHA-1");
+		private final MessageDigest sha256 = newDigest("SHA-256");
+
+		public void update(byte[] bytes, int offset, int length) {
+			md5.update(bytes, offset, length);
+			sha1.update(bytes, offset, length);
+			sha256.update(bytes, offset, length);
+		}
+
+		/**
+		 * Finish digesting. The digester can't be used after this.
+		 */
+		public Digests getDigests() {
+			return new Digests(md5, sha1, sha256);
+		}
+	}
+
+	protected static MessageDigest newDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(algorithm + " is not available", e);
+		}
+	}
+
+}
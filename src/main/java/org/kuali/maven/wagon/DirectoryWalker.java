@@ -0,0 +1,58 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+
+/**
+ * Visits every file below a directory, depth first, without first collecting them into a list. Each file is handed to the visitor together with its destination, which is the
+ * destination of the directory plus the path of the file relative to it.
+ */
+public class DirectoryWalker {
+
+	/**
+	 * Called once for every file found by the walk
+	 */
+	public interface Visitor {
+
+		/**
+		 * Return false to stop the walk
+		 */
+		boolean visit(File file, String destination);
+	}
+
+	/**
+	 * Walk <code>directory</code>, handing every file below it to the visitor. Returns false if the visitor stopped the walk.
+	 */
+	public static boolean walk(File directory, String destination, Visitor visitor) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return true;
+		}
+		for (File file : files) {
+			String path = destination + "/" + file.getName();
+			if (file.isDirectory()) {
+				if (!walk(file, path, visitor)) {
+					return false;
+				}
+			} else if (!visitor.visit(file, path)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * Copies S3 object content into local files through a {@link FileChannel} using large buffers from a {@link BufferPool}. Each buffer is filled completely before it is written
+ * and before the transfer listeners are notified, so a multi-megabyte download results in a handful of writes and progress events rather than one per kilobyte.
+ * <p>
+ * An HTTP stream can only be read into an array, so when the pool hands out direct buffers the content is read into a pooled array first and then written to the channel from
+ * the direct buffer. The channel would otherwise copy a heap buffer into a temporary direct buffer of its own on every write.
+ * </p>
+ */
+public class DownloadEngine {
+
+	private static final Logger log = LoggerFactory.getLogger(DownloadEngine.class);
+
+	BufferPool pool;
+
+	public DownloadEngine(BufferPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Write the content of an S3 object into the channel starting at <code>position</code>. If a journal is supplied it is kept up to date with the number of bytes on disk. If
+	 * anything goes wrong the HTTP stream is aborted instead of being drained.
+	 */
+	public void download(S3Object object, FileChannel channel, long position, TransferProgress progress, DownloadJournal journal) throws IOException {
+		long length = object.getObjectMetadata().getContentLength();
+		S3ObjectInputStream in = object.getObjectContent();
+		boolean success = false;
+		try {
+			long copied = copy(in, channel, position, length, progress, journal);
+			if (copied != length) {
+				throw new IOException("Expected " + length + " bytes for " + object.getKey() + " but only received " + copied);
+			}
+			success = true;
+		} finally {
+			close(in, success);
+		}
+	}
+
+	/**
+	 * Copy up to <code>length</code> bytes from the stream into the channel, starting at <code>position</code>. Progress is reported once per buffer if a progress notifier is
+	 * supplied. Returns the number of bytes copied, which is less than <code>length</code> only if the stream ended early.
+	 */
+	public long copy(InputStream in, FileChannel channel, long position, long length, TransferProgress progress) throws IOException {
+		return copy(in, channel, position, length, progress, null);
+	}
+
+	protected long copy(InputStream in, FileChannel channel, long position, long length, TransferProgress progress, DownloadJournal journal) throws IOException {
+		ByteBuffer buffer = pool.acquire();
+		ByteBuffer array = buffer.hasArray() ? buffer : getArrays().acquire();
+		try {
+			byte[] bytes = array.array();
+			long copied = 0;
+			boolean eof = false;
+			while (copied < length && !eof) {
+				int limit = (int) Math.min(bytes.length, length - copied);
+				int count = 0;
+				while (count < limit && !eof) {
+					int read = in.read(bytes, count, limit - count);
+					if (read == -1) {
+						eof = true;
+					} else {
+						count += read;
+					}
+				}
+				buffer.clear();
+				if (buffer == array) {
+					buffer.limit(count);
+				} else {
+					buffer.put(bytes, 0, count);
+					buffer.flip();
+				}
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, position + copied + buffer.position());
+				}
+				if (progress != null && count > 0) {
+					progress.notify(bytes, count);
+				}
+				copied += count;
+				if (journal != null) {
+					journal.update(position + copied);
+				}
+			}
+			return copied;
+		} finally {
+			pool.release(buffer);
+			if (array != buffer) {
+				getArrays().release(array);
+			}
+		}
+	}
+
+	/**
+	 * Heap buffers the same size as the pooled ones, for reading into when the pool hands out direct buffers
+	 */
+	protected BufferPool getArrays() {
+		return BufferPool.getInstance(pool.getBufferSize(), false);
+	}
+
+	/**
+	 * Read bytes that are already on disk back out of the channel and pass them to the listeners. Used when a download resumes, or completes out of order, so checksums are
+	 * still calculated over the whole file in sequence.
+	 */
+	public void replay(FileChannel channel, long position, long length, TransferProgress progress) throws IOException {
+		ByteBuffer buffer = getArrays().acquire();
+		try {
+			byte[] bytes = buffer.array();
+			long end = position + length;
+			while (position < end) {
+				buffer.clear();
+				buffer.limit((int) Math.min(bytes.length, end - position));
+				int read = channel.read(buffer, position);
+				if (read == -1) {
+					throw new IOException("Unexpected end of file at byte " + position);
+				}
+				progress.notify(bytes, read);
+				position += read;
+			}
+		} finally {
+			getArrays().release(buffer);
+		}
+	}
+
+	/**
+	 * Return the connection to the pool if the stream was fully consumed, otherwise abort it so we don't pull the rest of the object across the wire just to throw it away
+	 */
+	public void close(S3ObjectInputStream in, boolean success) {
+		if (success) {
+			IOUtils.closeQuietly(in);
+			return;
+		}
+		try {
+			in.abort();
+		} catch (IOException e) {
+			log.debug("Error aborting stream", e);
+		}
+	}
+
+}
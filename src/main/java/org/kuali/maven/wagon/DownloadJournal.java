@@ -0,0 +1,320 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Small sidecar file that sits next to a partially downloaded <code>.part</code> file. It records which object the partial content belongs to, the ETag of that object, and how
+ * many bytes have safely landed on disk so an interrupted download can be resumed with a ranged GET.
+ */
+public class DownloadJournal {
+
+	private static final Logger log = LoggerFactory.getLogger(DownloadJournal.class);
+
+	public static final String PART_SUFFIX = ".part";
+	public static final String JOURNAL_SUFFIX = ".journal";
+	public static final String LOCK_SUFFIX = ".lock";
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 8 * 1024 * 1024;
+
+	private static final String BUCKET = "bucket";
+	private static final String KEY = "key";
+	private static final String ETAG = "etag";
+	private static final String LENGTH = "length";
+	private static final String BYTES = "bytes";
+	private static final String ENCODING = "UTF-8";
+
+	// File locks are held by the whole JVM, so threads in this JVM queue up here before asking for one
+	private static final Set<File> LOCKED = new HashSet<File>();
+
+	File part;
+	File journal;
+	String bucketName;
+	String key;
+	String eTag;
+	long length;
+	long bytes;
+	long saved;
+	long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+	FileChannel channel;
+
+	public DownloadJournal(File part, String bucketName, String key, String eTag, long length) {
+		this.part = part;
+		this.journal = getJournalFile(part);
+		this.bucketName = bucketName;
+		this.key = key;
+		this.eTag = eTag;
+		this.length = length;
+	}
+
+	/**
+	 * Load the journal for <code>part</code>. Returns null if there is no journal, if it can't be read, if it belongs to a different object, or if the partial file is missing
+	 * bytes the journal claims were received.
+	 */
+	public static DownloadJournal load(File part, String bucketName, String key) {
+		File file = getJournalFile(part);
+		if (!file.exists() || !part.exists()) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			Properties properties = new Properties();
+			properties.load(in);
+			if (!bucketName.equals(properties.getProperty(BUCKET)) || !key.equals(properties.getProperty(KEY))) {
+				return null;
+			}
+			String eTag = properties.getProperty(ETAG);
+			long length = Long.parseLong(properties.getProperty(LENGTH));
+			long bytes = Long.parseLong(properties.getProperty(BYTES));
+			if (StringUtils.isBlank(eTag) || bytes <= 0 || bytes >= length || part.length() != length) {
+				return null;
+			}
+			DownloadJournal journal = new DownloadJournal(part, bucketName, key, eTag, length);
+			journal.bytes = bytes;
+			journal.saved = bytes;
+			return journal;
+		} catch (Exception e) {
+			log.debug("Ignoring unreadable download journal " + file, e);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	public static File getJournalFile(File part) {
+		return new File(part.getPath() + JOURNAL_SUFFIX);
+	}
+
+	public static File getLockFile(File part) {
+		return new File(part.getPath() + LOCK_SUFFIX);
+	}
+
+	/**
+	 * Take an exclusive lock on the partial download for <code>part</code>, blocking until any other thread or process working on it is done. The lock has to be held from
+	 * loading the journal until the download finishes so two builds sharing a local repository don't interleave writes into the same <code>.part</code> file. The journal itself
+	 * is replaced by a rename on every save, so the lock is taken on a separate <code>.lock</code> file that is deleted again when the lock is released.
+	 */
+	public static Lock lock(File part) throws IOException {
+		File file = getLockFile(part).getAbsoluteFile();
+		synchronized (LOCKED) {
+			while (LOCKED.contains(file)) {
+				try {
+					LOCKED.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for " + file);
+				}
+			}
+			LOCKED.add(file);
+		}
+		boolean success = false;
+		try {
+			Lock lock = null;
+			while (lock == null) {
+				lock = tryLock(file);
+			}
+			success = true;
+			return lock;
+		} finally {
+			if (!success) {
+				unlock(file);
+			}
+		}
+	}
+
+	/**
+	 * Lock the file and make sure it is still the file at that path. A process that was waiting while the previous holder deleted the file ends up holding a lock on a file nobody
+	 * else can see, so it writes a token through its own channel and only keeps the lock if the token can be read back through the path. Returns null if it has to try again.
+	 */
+	protected static Lock tryLock(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		boolean success = false;
+		try {
+			FileLock lock = raf.getChannel().lock();
+			String token = UUID.randomUUID().toString();
+			raf.setLength(0);
+			raf.write(token.getBytes(ENCODING));
+			if (!token.equals(readQuietly(file))) {
+				return null;
+			}
+			success = true;
+			return new Lock(file, raf, lock);
+		} finally {
+			if (!success) {
+				IOUtils.closeQuietly(raf);
+			}
+		}
+	}
+
+	protected static String readQuietly(File file) {
+		try {
+			return FileUtils.readFileToString(file, ENCODING);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	protected static void unlock(File file) {
+		synchronized (LOCKED) {
+			LOCKED.remove(file);
+			LOCKED.notifyAll();
+		}
+	}
+
+	/**
+	 * Exclusive hold on a partial download, see {@link DownloadJournal#lock(File)}
+	 */
+	public static class Lock {
+
+		private final File file;
+		private final RandomAccessFile raf;
+		private final FileLock lock;
+
+		protected Lock(File file, RandomAccessFile raf, FileLock lock) {
+			this.file = file;
+			this.raf = raf;
+			this.lock = lock;
+		}
+
+		/**
+		 * Delete the lock file and release the lock. The file goes first so nobody can lock it again in between.
+		 */
+		public void release() {
+			try {
+				file.delete();
+				lock.release();
+			} catch (IOException e) {
+				// Closing the file below releases the lock anyway
+				log.debug("Unable to release " + file, e);
+			} finally {
+				IOUtils.closeQuietly(raf);
+				unlock(file);
+			}
+		}
+
+	}
+
+	/**
+	 * Record that everything before <code>bytes</code> is on disk. The journal is written out each time another checkpoint interval worth of data has been received.
+	 */
+	public void update(long bytes) {
+		this.bytes = bytes;
+		if (bytes - saved >= checkpointInterval) {
+			save();
+		}
+	}
+
+	/**
+	 * Write the journal to disk. The partial file is forced out first, then the new content is written to a temporary file and renamed over the old journal.
+	 */
+	public void save() {
+		Properties properties = new Properties();
+		properties.setProperty(BUCKET, bucketName);
+		properties.setProperty(KEY, key);
+		properties.setProperty(ETAG, eTag);
+		properties.setProperty(LENGTH, Long.toString(length));
+		properties.setProperty(BYTES, Long.toString(bytes));
+		File temp = new File(journal.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			if (channel != null) {
+				channel.force(false);
+			}
+			out = new FileOutputStream(temp);
+			properties.store(out, null);
+			out.close();
+			journal.delete();
+			if (!temp.renameTo(journal)) {
+				throw new IOException("Unable to rename " + temp + " to " + journal);
+			}
+			saved = bytes;
+		} catch (IOException e) {
+			// Losing a checkpoint only means a resumed download starts further back
+			log.debug("Unable to save download journal " + journal, e);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Remove the journal and the partial file it describes
+	 */
+	public void delete() {
+		journal.delete();
+		part.delete();
+	}
+
+	/**
+	 * Data written to the partial file has to be on disk before the journal claims it is, otherwise a crash could leave a journal that vouches for bytes that were never written.
+	 * The channel is forced at every checkpoint when it is set.
+	 */
+	public void setChannel(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	public File getPart() {
+		return part;
+	}
+
+	public String getBucketName() {
+		return bucketName;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getETag() {
+		return eTag;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(long checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.services.s3.model.PutObjectRequest;
+
+/**
+ * Uploads a file. Files smaller than the multipart threshold are sent with a single PUT, straight from memory if they are small enough. For larger files this only starts a
+ * multipart upload and returns its parts, so the parts go through the scheduler like everything else.
+ */
+public class FileUpload extends UploadUnit {
+
+	PutFileContext context;
+	MultipartEngine engine;
+	SmallObjectUploader small;
+	MultipartTracker tracker;
+
+	public FileUpload(PutFileContext context, MultipartEngine engine, SmallObjectUploader small, MultipartTracker tracker) {
+		this.context = context;
+		this.engine = engine;
+		this.small = small;
+		this.tracker = tracker;
+	}
+
+	@Override
+	public long getLength() {
+		return context.getLength();
+	}
+
+	@Override
+	public List<UploadUnit> upload() {
+		if (small.isSmall(getLength())) {
+			small.upload(context);
+			return Collections.emptyList();
+		}
+		if (!isMultipart()) {
+			PutObjectRequest request = context.getFactory().getPutObjectRequest(context);
+			context.getClient().putObject(request);
+			return Collections.emptyList();
+		}
+		MultipartUpload upload = engine.start(context);
+		tracker.add(upload);
+		return upload.getParts();
+	}
+
+	public boolean isMultipart() {
+		return engine.isMultipart(getLength());
+	}
+
+	public PutFileContext getContext() {
+		return context;
+	}
+
+}
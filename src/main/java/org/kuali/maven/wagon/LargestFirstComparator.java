@@ -0,0 +1,30 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.Comparator;
+
+/**
+ * Orders uploads so the largest come first
+ */
+public class LargestFirstComparator implements Comparator<UploadUnit> {
+
+	public int compare(UploadUnit one, UploadUnit two) {
+		long difference = two.getLength() - one.getLength();
+		return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+	}
+
+}
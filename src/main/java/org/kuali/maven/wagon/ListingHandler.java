@@ -0,0 +1,36 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * Receives the results of a listing one at a time as pages arrive from S3. Implementations used for a concurrent walk are called from several threads at once and must be
+ * thread safe.
+ */
+public interface ListingHandler {
+
+	/**
+	 * Called for each object whose key begins with the prefix being listed
+	 */
+	void handleObject(S3ObjectSummary summary);
+
+	/**
+	 * Called for each common prefix, ie each "sub-directory", when listing with a delimiter
+	 */
+	void handlePrefix(String prefix);
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * The path, size and MD5 of every file written by a <code>putDirectory</code>. It is stored as a single gzipped binary object at the root of the destination so the next deploy
+ * can work out what has changed with one GET instead of listing the whole destination.
+ */
+public class Manifest {
+
+	public static final String NAME = ".s3wagon-manifest";
+
+	private static final int MAGIC = 0x53334D46;
+	private static final int VERSION = 1;
+	private static final int MD5_LENGTH = 16;
+
+	Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+	public void put(String path, long size, String md5) {
+		entries.put(path, new Entry(size, md5));
+	}
+
+	public Entry get(String path) {
+		return entries.get(path);
+	}
+
+	public Set<String> getPaths() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Return true if this manifest has an entry for <code>path</code> with the same size and MD5
+	 */
+	public boolean matches(String path, Entry entry) {
+		Entry other = entries.get(path);
+		return other != null && other.size == entry.size && other.md5.equalsIgnoreCase(entry.md5);
+	}
+
+	public void write(OutputStream out) throws IOException {
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		DataOutputStream data = new DataOutputStream(gzip);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(entries.size());
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			data.writeUTF(entry.getKey());
+			data.writeLong(entry.getValue().size);
+			data.write(HashCode.fromString(entry.getValue().md5.toLowerCase()).asBytes());
+		}
+		data.flush();
+		gzip.finish();
+	}
+
+	public static Manifest read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new GZIPInputStream(in));
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a manifest");
+		}
+		int version = data.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported manifest version " + version);
+		}
+		Manifest manifest = new Manifest();
+		int count = data.readInt();
+		byte[] md5 = new byte[MD5_LENGTH];
+		for (int i = 0; i < count; i++) {
+			String path = data.readUTF();
+			long size = data.readLong();
+			data.readFully(md5);
+			manifest.put(path, size, HashCode.fromBytes(md5).toString());
+		}
+		return manifest;
+	}
+
+	public static class Entry {
+		private final long size;
+		private final String md5;
+
+		public Entry(long size, String md5) {
+			this.size = size;
+			this.md5 = md5;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public String getMd5() {
+			return md5;
+		}
+	}
+
+}
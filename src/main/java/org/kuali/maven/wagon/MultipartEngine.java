@@ -0,0 +1,239 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.kuali.common.threads.listener.NoOpListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+
+/**
+ * <p>
+ * Decides which files are uploaded in parts and how big the parts are, and uploads single files in parts with a fixed number of parts in flight at once. Directory uploads
+ * schedule parts alongside everything else instead, so there the number of parts in flight is limited by the directory upload.
+ * </p>
+ *
+ * <p>
+ * If a journal directory is set, single file uploads can be resumed. Each upload is recorded in an {@link UploadJournal}, and an upload that fails is left in S3 rather than
+ * aborted. The next attempt to upload the same, unchanged file asks S3 which parts it already has and only sends the rest. Uploads whose journal hasn't been written for
+ * longer than the stale time are aborted, since nobody is coming back for them.
+ * </p>
+ */
+public class MultipartEngine {
+
+	private static final Logger log = LoggerFactory.getLogger(MultipartEngine.class);
+
+	/**
+	 * S3 doesn't accept parts smaller than this, other than the last part of a file
+	 */
+	public static final long MIN_PART_SIZE = 5 * 1024 * 1024;
+
+	long threshold;
+	long partSize;
+	int threads;
+	File journalDirectory;
+	long staleAfter;
+
+	public MultipartEngine(long threshold, long partSize, int threads) {
+		this.partSize = Math.max(partSize, MIN_PART_SIZE);
+		this.threshold = Math.max(threshold, this.partSize);
+		this.threads = Math.max(threads, 1);
+	}
+
+	public boolean isMultipart(long length) {
+		return length >= threshold;
+	}
+
+	/**
+	 * The number of requests needed to upload a file of this size, not counting starting and completing a multipart upload
+	 */
+	public int getRequestCount(long length) {
+		return isMultipart(length) ? MultipartUpload.getPartCount(length, partSize) : 1;
+	}
+
+	/**
+	 * Start a multipart upload of the file in <code>context</code>
+	 */
+	public MultipartUpload start(PutFileContext context) {
+		return MultipartUpload.start(context, partSize);
+	}
+
+	/**
+	 * Upload a file in parts and wait for it to finish. Parts are uploaded in order, as many at a time as this engine has threads. If the upload fails the parts uploaded so far
+	 * are thrown away. Returns the digests of the whole file, calculated as the finished parts are passed to the transfer listeners.
+	 */
+	public Digests upload(PutFileContext context) {
+		MultipartUpload upload = journalDirectory == null ? start(context) : resumeOrStart(context);
+		upload.setDigester(new Digests.Digester());
+		UploadUnitHandler handler = new UploadUnitHandler();
+		UploadScheduler<UploadUnit> scheduler = new UploadScheduler<UploadUnit>(handler, new NoOpListener<UploadUnit>(), new LargestFirstComparator());
+		handler.setScheduler(scheduler);
+		try {
+			if (upload.isReady()) {
+				// Every part made it last time, only completing the upload failed
+				upload.notifyProgress();
+				upload.complete();
+			} else {
+				scheduler.execute(upload.getParts(), Math.min(threads, upload.getParts().size()));
+			}
+		} catch (RuntimeException e) {
+			if (upload.getJournal() == null) {
+				upload.abort();
+			} else {
+				log.info("The upload of " + upload.getKey() + " can be resumed by uploading the file again");
+			}
+			throw e;
+		}
+		if (upload.getJournal() != null) {
+			upload.getJournal().delete();
+		}
+		return upload.getDigests();
+	}
+
+	/**
+	 * Resume the upload recorded in the journal for this file if the file hasn't changed and S3 still has the upload. Otherwise start a new one.
+	 */
+	protected MultipartUpload resumeOrStart(PutFileContext context) {
+		AmazonS3 client = context.getClient();
+		abortStale(client);
+		InitiateMultipartUploadRequest request = context.getFactory().getInitiateMultipartUploadRequest(context);
+		File file = UploadJournal.getFile(journalDirectory, request.getBucketName(), request.getKey());
+		UploadJournal journal = UploadJournal.load(file);
+		long size = MultipartUpload.getPartSize(context.getLength(), partSize);
+		if (journal != null && journal.matches(context.getSource(), size)) {
+			Map<Integer, String> done = getUploadedParts(client, journal, context.getSource());
+			if (done != null) {
+				MultipartUpload upload = MultipartUpload.resume(context, request, journal.getUploadId(), partSize, done);
+				upload.setJournal(journal);
+				log.info("Resuming the upload of " + request.getKey() + ", " + done.size() + " of " + upload.getPartCount() + " parts are already in S3");
+				return upload;
+			}
+		}
+		if (journal != null) {
+			// The file changed, or S3 no longer has the upload
+			abort(client, journal);
+		}
+		MultipartUpload upload = start(context);
+		journal = new UploadJournal(file, upload.bucketName, upload.getKey(), upload.getUploadId(), context.getSource(), upload.getPartSize());
+		journal.save();
+		upload.setJournal(journal);
+		return upload;
+	}
+
+	/**
+	 * Return the parts S3 has for the upload in the journal whose ETag and size match what the journal recorded, by part number. Returns null if S3 no longer has the upload. A
+	 * part is only returned if that part of the file still has the same MD5, anything else is uploaded again.
+	 */
+	protected Map<Integer, String> getUploadedParts(AmazonS3 client, UploadJournal journal, File source) {
+		long length = source.length();
+		Map<Integer, String> recorded = journal.getParts();
+		Map<Integer, String> done = new HashMap<Integer, String>();
+		ListPartsRequest request = new ListPartsRequest(journal.getBucketName(), journal.getKey(), journal.getUploadId());
+		try {
+			PartListing listing = client.listParts(request);
+			while (true) {
+				for (PartSummary part : listing.getParts()) {
+					String eTag = StringUtils.remove(part.getETag(), '"');
+					long expected = Math.min(journal.getPartSize(), length - (part.getPartNumber() - 1) * journal.getPartSize());
+					if (eTag.equalsIgnoreCase(recorded.get(part.getPartNumber())) && part.getSize() == expected && journal.isUnchanged(source, part.getPartNumber(), eTag)) {
+						done.put(part.getPartNumber(), eTag);
+					}
+				}
+				if (!listing.isTruncated()) {
+					return done;
+				}
+				request.setPartNumberMarker(listing.getNextPartNumberMarker());
+				listing = client.listParts(request);
+			}
+		} catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+				return null;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Abort the uploads recorded in journals that haven't been written for longer than the stale time. Only those journals are read.
+	 */
+	protected void abortStale(AmazonS3 client) {
+		if (staleAfter <= 0) {
+			return;
+		}
+		for (UploadJournal journal : UploadJournal.list(journalDirectory, System.currentTimeMillis() - staleAfter)) {
+			log.info("Aborting the stale upload of " + journal.getKey());
+			abort(client, journal);
+		}
+	}
+
+	protected void abort(AmazonS3 client, UploadJournal journal) {
+		try {
+			client.abortMultipartUpload(new AbortMultipartUploadRequest(journal.getBucketName(), journal.getKey(), journal.getUploadId()));
+		} catch (AmazonS3Exception e) {
+			if (e.getStatusCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+				log.warn("Unable to abort the upload of " + journal.getKey() + ": " + e.getMessage());
+				return;
+			}
+		} catch (AmazonClientException e) {
+			log.warn("Unable to abort the upload of " + journal.getKey() + ": " + e.getMessage());
+			return;
+		}
+		journal.delete();
+	}
+
+	/**
+	 * Keep journals of uploads in <code>directory</code> so they can be resumed. Uploads whose journal hasn't been written for <code>staleAfter</code> milliseconds are aborted.
+	 */
+	public void setJournals(File directory, long staleAfter) {
+		this.journalDirectory = directory;
+		this.staleAfter = staleAfter;
+	}
+
+	public long getThreshold() {
+		return threshold;
+	}
+
+	public long getPartSize() {
+		return partSize;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public File getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	public long getStaleAfter() {
+		return staleAfter;
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the multipart uploads started during a directory upload so any that never completed can be aborted. Parts of an upload that is neither completed nor aborted
+ * are kept, and paid for, by S3 indefinitely.
+ */
+public class MultipartTracker {
+
+	List<MultipartUpload> uploads = new ArrayList<MultipartUpload>();
+
+	public synchronized void add(MultipartUpload upload) {
+		uploads.add(upload);
+	}
+
+	/**
+	 * Abort every upload that hasn't completed. Returns the number aborted.
+	 */
+	public int abortIncomplete() {
+		int aborted = 0;
+		for (MultipartUpload upload : getUploads()) {
+			if (!upload.isCompleted()) {
+				upload.abort();
+				aborted++;
+			}
+		}
+		return aborted;
+	}
+
+	public synchronized List<MultipartUpload> getUploads() {
+		return new ArrayList<MultipartUpload>(uploads);
+	}
+
+}
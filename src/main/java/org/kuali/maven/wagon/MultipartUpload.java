@@ -0,0 +1,507 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.google.common.hash.HashCode;
+
+/**
+ * <p>
+ * A file being uploaded in parts. Each part is a separate {@link UploadUnit}, and whichever part finishes last completes the upload. Parts are recorded by part number, so a
+ * part that is uploaded again replaces the earlier copy. A part unit that runs again after its part is already in S3 only retries completing the upload.
+ * </p>
+ *
+ * <p>
+ * Parts are read straight from the file through a {@link PartInputStream}. The MD5 of each part is calculated as it streams and checked against the ETag S3 returns for it, so a
+ * part that was corrupted on the way fails. The transfer listeners are told about the bytes of the file in order so checksums they calculate come out right. The part that is
+ * next in line reports its bytes as they are read. A part that finishes ahead of its turn is read back from the file once every part before it is done.
+ * </p>
+ */
+public class MultipartUpload {
+
+	private static final Logger log = LoggerFactory.getLogger(MultipartUpload.class);
+	/**
+	 * S3 doesn't accept more parts than this for one object
+	 */
+	public static final int MAX_PARTS = 10000;
+	/**
+	 * How many times completing the upload is tried before giving up
+	 */
+	public static final int MAX_COMPLETE_ATTEMPTS = 4;
+	private static final int REPLAY_BUFFER_SIZE = 64 * 1024;
+	private static final long COMPLETE_BACKOFF = 250;
+
+	AmazonS3 client;
+	PutFileContext context;
+	String bucketName;
+	String key;
+	String uploadId;
+	long partSize;
+	int partCount;
+	Map<Integer, PartETag> eTags = new TreeMap<Integer, PartETag>();
+	BitSet finished = new BitSet();
+	boolean completed;
+	UploadJournal journal;
+	volatile Digests.Digester digester;
+	volatile Digests digests;
+	// Everything in the file before this offset has been passed to the transfer listeners and the digester
+	volatile long reported;
+	private final Object reporting = new Object();
+	private final Object completion = new Object();
+
+	protected MultipartUpload(AmazonS3 client, PutFileContext context, String bucketName, String key, String uploadId, long partSize) {
+		this.client = client;
+		this.context = context;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.uploadId = uploadId;
+		this.partSize = getPartSize(context.getLength(), partSize);
+		this.partCount = getPartCount(context.getLength(), this.partSize);
+	}
+
+	/**
+	 * Start a multipart upload of the file in <code>context</code>
+	 */
+	public static MultipartUpload start(PutFileContext context, long partSize) {
+		InitiateMultipartUploadRequest request = context.getFactory().getInitiateMultipartUploadRequest(context);
+		AmazonS3 client = context.getClient();
+		String uploadId = client.initiateMultipartUpload(request).getUploadId();
+		return new MultipartUpload(client, context, request.getBucketName(), request.getKey(), uploadId, partSize);
+	}
+
+	/**
+	 * Pick up a multipart upload that was started earlier. <code>done</code> holds the ETags of the parts already in S3, by part number.
+	 */
+	public static MultipartUpload resume(PutFileContext context, InitiateMultipartUploadRequest request, String uploadId, long partSize, Map<Integer, String> done) {
+		MultipartUpload upload = new MultipartUpload(context.getClient(), context, request.getBucketName(), request.getKey(), uploadId, partSize);
+		for (Map.Entry<Integer, String> part : done.entrySet()) {
+			upload.eTags.put(part.getKey(), new PartETag(part.getKey(), part.getValue()));
+			upload.finished.set(part.getKey());
+		}
+		return upload;
+	}
+
+	public static int getPartCount(long length, long partSize) {
+		partSize = getPartSize(length, partSize);
+		return (int) Math.max((length + partSize - 1) / partSize, 1);
+	}
+
+	/**
+	 * Use bigger parts than asked for if the file would otherwise need more than {@link #MAX_PARTS} of them
+	 */
+	public static long getPartSize(long length, long partSize) {
+		return Math.max(partSize, (length + MAX_PARTS - 1) / MAX_PARTS);
+	}
+
+	/**
+	 * Return a unit for every part of the file that isn't in S3 yet
+	 */
+	public synchronized List<UploadUnit> getParts() {
+		List<UploadUnit> parts = new ArrayList<UploadUnit>();
+		for (int number = 1; number <= partCount; number++) {
+			if (!finished.get(number)) {
+				parts.add(new Part(this, number));
+			}
+		}
+		return parts;
+	}
+
+	protected long getOffset(int number) {
+		return (number - 1) * partSize;
+	}
+
+	protected long getPartLength(int number) {
+		return Math.min(partSize, context.getLength() - getOffset(number));
+	}
+
+	/**
+	 * Upload one part, unless it is already in S3. Once every part is in S3 the upload is completed.
+	 */
+	protected void upload(int number) {
+		if (!isFinished(number)) {
+			uploadPart(number);
+		}
+		if (isReady()) {
+			complete();
+		}
+	}
+
+	protected void uploadPart(int number) {
+		RandomAccessFile file = open();
+		try {
+			FileChannel channel = file.getChannel();
+			PartStream in = new PartStream(new PartInputStream(channel, getOffset(number), getPartLength(number)));
+			UploadPartRequest request = new UploadPartRequest();
+			request.setBucketName(bucketName);
+			request.setKey(key);
+			request.setUploadId(uploadId);
+			request.setPartNumber(number);
+			request.setInputStream(in);
+			request.setPartSize(getPartLength(number));
+			request.setLastPart(number == partCount);
+			PartETag eTag = client.uploadPart(request).getPartETag();
+			verify(eTag, in.getMd5());
+			add(eTag);
+			notifyProgress(channel);
+		} finally {
+			IOUtils.closeQuietly(file);
+		}
+	}
+
+	protected RandomAccessFile open() {
+		try {
+			return new RandomAccessFile(context.getSource(), "r");
+		} catch (FileNotFoundException e) {
+			throw new AmazonClientException("File not found", e);
+		}
+	}
+
+	/**
+	 * The ETag of a part is the MD5 of what S3 received
+	 */
+	protected void verify(PartETag eTag, String md5) {
+		String received = StringUtils.remove(eTag.getETag(), '"');
+		if (md5 != null && !md5.equalsIgnoreCase(received)) {
+			throw new AmazonClientException("Part " + eTag.getPartNumber() + " of " + key + " has MD5 " + md5 + " but S3 received " + received);
+		}
+	}
+
+	/**
+	 * Record a finished part. Returns true if every part is now in S3.
+	 */
+	protected synchronized boolean add(PartETag eTag) {
+		eTags.put(eTag.getPartNumber(), eTag);
+		finished.set(eTag.getPartNumber());
+		if (journal != null) {
+			journal.put(eTag.getPartNumber(), eTag.getETag());
+		}
+		return isReady();
+	}
+
+	public synchronized boolean isFinished(int number) {
+		return finished.get(number);
+	}
+
+	/**
+	 * Return true if every part is in S3, so the upload can be completed
+	 */
+	public synchronized boolean isReady() {
+		return eTags.size() == partCount;
+	}
+
+	/**
+	 * The offset of the first part that isn't in S3 yet, or the length of the file if every part is
+	 */
+	protected synchronized long getFinishedThrough() {
+		int number = finished.nextClearBit(1);
+		return Math.min(getOffset(number), context.getLength());
+	}
+
+	/**
+	 * Pass the bytes of every part that is finished, and has no unfinished parts before it, to the transfer listeners and the digester
+	 */
+	public void notifyProgress() {
+		RandomAccessFile file = open();
+		try {
+			notifyProgress(file.getChannel());
+		} finally {
+			IOUtils.closeQuietly(file);
+		}
+	}
+
+	/**
+	 * Catch the listeners up with the finished parts. Only bytes that weren't reported while their part streamed are read back from the file.
+	 */
+	protected void notifyProgress(FileChannel channel) {
+		if (!isReporting()) {
+			return;
+		}
+		synchronized (reporting) {
+			try {
+				long end = getFinishedThrough();
+				if (reported < end) {
+					replay(channel, reported, end - reported);
+					reported = end;
+				}
+			} catch (IOException e) {
+				throw new AmazonClientException("Unexpected IO error", e);
+			}
+			if (digester != null && digests == null && reported == context.getLength()) {
+				digests = digester.getDigests();
+			}
+		}
+	}
+
+	protected void replay(FileChannel channel, long position, long length) throws IOException {
+		byte[] bytes = new byte[REPLAY_BUFFER_SIZE];
+		long end = position + length;
+		while (position < end) {
+			int read = channel.read(ByteBuffer.wrap(bytes, 0, (int) Math.min(bytes.length, end - position)), position);
+			if (read == -1) {
+				throw new IOException("Unexpected end of file at byte " + position);
+			}
+			deliver(bytes, 0, read);
+			position += read;
+		}
+	}
+
+	/**
+	 * Called as a part streams. Bytes that carry on exactly where the listeners left off are reported straight away. Anything else is left for
+	 * {@link #notifyProgress(FileChannel)}, which avoids taking the lock for parts that are ahead of their turn.
+	 */
+	protected void report(long position, byte[] bytes, int offset, int length) {
+		if (!isReporting() || position > reported || position + length <= reported) {
+			return;
+		}
+		synchronized (reporting) {
+			long skip = reported - position;
+			if (skip < 0 || skip >= length) {
+				return;
+			}
+			deliver(bytes, offset + (int) skip, length - (int) skip);
+			reported = position + length;
+		}
+	}
+
+	protected void deliver(byte[] bytes, int offset, int length) {
+		TransferProgress progress = context.getProgress();
+		if (progress != null) {
+			if (offset == 0) {
+				progress.notify(bytes, length);
+			} else {
+				byte[] copy = new byte[length];
+				System.arraycopy(bytes, offset, copy, 0, length);
+				progress.notify(copy, length);
+			}
+		}
+		if (digester != null) {
+			digester.update(bytes, offset, length);
+		}
+	}
+
+	protected boolean isReporting() {
+		return context.getProgress() != null || digester != null;
+	}
+
+	/**
+	 * Complete the upload. Does nothing if it was already completed, so every part that sees the upload is ready can call this. Server errors and network errors are retried a
+	 * few times before giving up.
+	 */
+	public void complete() {
+		synchronized (completion) {
+			List<PartETag> parts;
+			synchronized (this) {
+				if (completed) {
+					return;
+				}
+				parts = new ArrayList<PartETag>(eTags.values());
+			}
+			CompleteMultipartUploadRequest request = new CompleteMultipartUploadRequest(bucketName, key, uploadId, parts);
+			for (int attempt = 1;; attempt++) {
+				try {
+					client.completeMultipartUpload(request);
+					break;
+				} catch (AmazonClientException e) {
+					if (attempt >= MAX_COMPLETE_ATTEMPTS || !isRetryable(e)) {
+						throw e;
+					}
+					log.debug("Retrying completion of " + key + ": " + e.getMessage());
+					backoff(attempt);
+				}
+			}
+			synchronized (this) {
+				completed = true;
+			}
+		}
+	}
+
+	protected boolean isRetryable(AmazonClientException e) {
+		// Anything that isn't a service error never reached S3, eg a connection reset
+		return !(e instanceof AmazonServiceException) || ((AmazonServiceException) e).getStatusCode() >= 500;
+	}
+
+	protected void backoff(int attempt) {
+		try {
+			Thread.sleep(COMPLETE_BACKOFF << (attempt - 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Interrupted while completing the upload of " + key, e);
+		}
+	}
+
+	/**
+	 * Throw away the parts uploaded so far, unless the upload was already completed
+	 */
+	public void abort() {
+		if (isCompleted()) {
+			return;
+		}
+		try {
+			client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+		} catch (AmazonClientException e) {
+			log.warn("Unable to abort the upload of " + key + ": " + e.getMessage());
+		}
+	}
+
+	public synchronized boolean isCompleted() {
+		return completed;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getUploadId() {
+		return uploadId;
+	}
+
+	public int getPartCount() {
+		return partCount;
+	}
+
+	public long getPartSize() {
+		return partSize;
+	}
+
+	/**
+	 * Digest the whole file as the parts are passed to the transfer listeners, in order. The digests are available once every part is done.
+	 */
+	public void setDigester(Digests.Digester digester) {
+		this.digester = digester;
+	}
+
+	public Digests getDigests() {
+		return digests;
+	}
+
+	public UploadJournal getJournal() {
+		return journal;
+	}
+
+	public void setJournal(UploadJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Digests a part as it is sent and hands what is read to {@link MultipartUpload#report(long, byte[], int, int)}. The HTTP client resets the stream to send the part again if
+	 * the request is retried. A reset to the start of the part starts the MD5 over, after a reset to anywhere else the MD5 is no longer known.
+	 */
+	protected class PartStream extends DigestInputStream {
+		PartInputStream part;
+		boolean unknown;
+		String md5;
+
+		protected PartStream(PartInputStream part) {
+			super(part, Digests.newDigest("MD5"));
+			this.part = part;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int read = read(b, 0, 1);
+			return read == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				report(part.getPosition() - read, b, off, read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			unknown |= skipped > 0;
+			return skipped;
+		}
+
+		@Override
+		public synchronized void reset() throws IOException {
+			super.reset();
+			getMessageDigest().reset();
+			unknown = part.getPosition() != part.getStart();
+			md5 = null;
+		}
+
+		/**
+		 * The MD5 of the part as a hex string, or null if the part hasn't been read exactly once from start to end
+		 */
+		public String getMd5() {
+			if (md5 == null && !unknown && part.getPosition() == part.getEnd()) {
+				md5 = HashCode.fromBytes(getMessageDigest().digest()).toString();
+			}
+			return md5;
+		}
+	}
+
+	/**
+	 * One part of a multipart upload
+	 */
+	public static class Part extends UploadUnit {
+		MultipartUpload upload;
+		int number;
+
+		protected Part(MultipartUpload upload, int number) {
+			this.upload = upload;
+			this.number = number;
+		}
+
+		@Override
+		public long getLength() {
+			return upload.getPartLength(number);
+		}
+
+		@Override
+		public List<UploadUnit> upload() {
+			upload.upload(number);
+			return Collections.emptyList();
+		}
+
+		public int getNumber() {
+			return number;
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * A snapshot of every object below a prefix, built from a single flat listing. Objects are looked up by their path relative to the prefix. Only the size, ETag and last
+ * modified time of each object are kept.
+ */
+public class ObjectIndex implements ListingHandler {
+
+	String prefix;
+	Map<String, Entry> entries = new HashMap<String, Entry>();
+	long totalSize;
+
+	public ObjectIndex(String prefix) {
+		this.prefix = prefix;
+	}
+
+	public void handleObject(S3ObjectSummary summary) {
+		String key = summary.getKey();
+		String path = key.startsWith(prefix) ? key.substring(prefix.length()) : key;
+		Date lastModified = summary.getLastModified();
+		entries.put(path, new Entry(summary.getSize(), summary.getETag(), lastModified == null ? 0 : lastModified.getTime()));
+		totalSize += summary.getSize();
+	}
+
+	public void handlePrefix(String prefix) {
+		// A flat listing has no common prefixes
+	}
+
+	/**
+	 * Return the object at <code>path</code>, relative to the prefix of this index, or null if there isn't one
+	 */
+	public Entry get(String path) {
+		return entries.get(path);
+	}
+
+	public boolean contains(String path) {
+		return entries.containsKey(path);
+	}
+
+	public Set<String> getPaths() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getTotalSize() {
+		return totalSize;
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public static class Entry {
+		private final long size;
+		private final String eTag;
+		private final long lastModified;
+
+		public Entry(long size, String eTag, long lastModified) {
+			this.size = size;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+	}
+
+}
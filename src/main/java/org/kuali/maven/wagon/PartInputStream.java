@@ -0,0 +1,112 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Reads a slice of a file through a {@link FileChannel} using positional reads. Bytes go straight from the channel into the buffer of whoever is reading, so the file is never
+ * copied into a buffer of our own, and any number of slices of the same file can be read at once.
+ * </p>
+ *
+ * <p>
+ * Mark and reset are supported so the HTTP client can send the slice again if a request has to be retried.
+ * </p>
+ */
+public class PartInputStream extends InputStream {
+
+	FileChannel channel;
+	long start;
+	long end;
+	long position;
+	long mark;
+
+	public PartInputStream(FileChannel channel, long start, long length) {
+		this.channel = channel;
+		this.start = start;
+		this.end = start + length;
+		this.position = start;
+		this.mark = start;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int read = read(b, 0, 1);
+		return read == -1 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (position >= end) {
+			return -1;
+		}
+		len = (int) Math.min(len, end - position);
+		int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+		if (read == -1) {
+			throw new IOException("Unexpected end of file at byte " + position);
+		}
+		position += read;
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = Math.max(Math.min(n, end - position), 0);
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(end - position, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		mark = position;
+	}
+
+	@Override
+	public synchronized void reset() {
+		position = mark;
+	}
+
+	/**
+	 * The position in the file of the next byte to be read
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+}
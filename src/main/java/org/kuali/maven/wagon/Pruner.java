@@ -0,0 +1,130 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * Deletes every object below a root that has no counterpart in the set of paths being deployed. Orphans are deleted as the listing streams in, a thousand keys per
+ * <code>DeleteObjects</code> request. In dry run mode the orphans are only logged. Interrupting the thread pruning stops it before the next request.
+ */
+public class Pruner implements Callable<Integer> {
+
+	private static final Logger log = LoggerFactory.getLogger(Pruner.class);
+
+	/**
+	 * The most keys S3 accepts in a single DeleteObjects request
+	 */
+	public static final int MAX_BATCH_SIZE = 1000;
+
+	AmazonS3 client;
+	String bucketName;
+	String root;
+	Set<String> keep;
+	boolean dryRun;
+	List<KeyVersion> batch = new ArrayList<KeyVersion>();
+	List<String> deleted = new ArrayList<String>();
+
+	public Pruner(AmazonS3 client, String bucketName, String root, Set<String> keep, boolean dryRun) {
+		this.client = client;
+		this.bucketName = bucketName;
+		this.root = root;
+		this.keep = keep;
+		this.dryRun = dryRun;
+	}
+
+	/**
+	 * Delete the orphans and return how many there were
+	 */
+	public Integer call() {
+		new S3Lister(client, bucketName, 1).list(root, null, new ListingHandler() {
+			public void handleObject(S3ObjectSummary summary) {
+				checkCancelled();
+				String key = summary.getKey();
+				if (isOrphan(key.substring(root.length()))) {
+					add(key);
+				}
+			}
+
+			public void handlePrefix(String prefix) {
+				// A flat listing has no common prefixes
+			}
+		});
+		flush();
+		String msg = dryRun ? "Dry run, would have pruned " : "Pruned ";
+		log.info(msg + deleted.size() + " files from '" + root + "'");
+		return deleted.size();
+	}
+
+	protected boolean isOrphan(String path) {
+		return !keep.contains(path) && !Manifest.NAME.equals(path);
+	}
+
+	protected void add(String key) {
+		if (dryRun) {
+			log.info("Would prune " + key);
+			deleted.add(key);
+			return;
+		}
+		batch.add(new KeyVersion(key));
+		if (batch.size() == MAX_BATCH_SIZE) {
+			flush();
+		}
+	}
+
+	protected void flush() {
+		if (batch.isEmpty()) {
+			return;
+		}
+		checkCancelled();
+		DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName);
+		request.setKeys(batch);
+		request.setQuiet(true);
+		// A partial failure surfaces as a MultiObjectDeleteException listing the keys that could not be deleted
+		client.deleteObjects(request);
+		for (KeyVersion key : batch) {
+			deleted.add(key.getKey());
+		}
+		log.debug("Pruned " + batch.size() + " files");
+		batch = new ArrayList<KeyVersion>();
+	}
+
+	protected void checkCancelled() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Pruning '" + root + "' was cancelled");
+		}
+	}
+
+	/**
+	 * The keys that were deleted, or that would have been in dry run mode
+	 */
+	public List<String> getDeleted() {
+		return deleted;
+	}
+
+}
@@ -28,6 +28,7 @@ import com.amazonaws.services.s3.transfer.TransferManager;
  */
 public class PutFileContext {
 	File source;
+	long length;
 	String destination;
 	Resource resource;
 	TransferProgress progress;
@@ -85,6 +86,17 @@ public class PutFileContext {
 		this.source = source;
 	}
 
+	/**
+	 * The size of the source file, recorded once when the context is created so schedulers can order by it cheaply
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	public void setLength(long length) {
+		this.length = length;
+	}
+
 	public RequestFactory getFactory() {
 		return factory;
 	}
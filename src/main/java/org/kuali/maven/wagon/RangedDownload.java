@@ -0,0 +1,266 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.collect.Sets;
+
+/**
+ * Downloads a large S3 object by splitting it into byte ranges that are fetched concurrently and written directly to their offset in the destination file. Progress is
+ * reported in offset order as ranges complete so listeners that calculate checksums see the bytes in the same sequence as a single stream download.
+ */
+public class RangedDownload {
+
+	private static final Logger log = LoggerFactory.getLogger(RangedDownload.class);
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+	private static final long CANCEL_TIMEOUT = 10000;
+
+	AmazonS3Client client;
+	DownloadEngine engine;
+	String bucketName;
+	String key;
+	String eTag;
+	long length;
+	long partSize;
+	int threads;
+	Set<S3Object> active = Sets.newSetFromMap(new ConcurrentHashMap<S3Object, Boolean>());
+	volatile boolean failed;
+	volatile IOException failure;
+
+	public RangedDownload(AmazonS3Client client, DownloadEngine engine, String bucketName, String key, String eTag, long length, long partSize, int threads) {
+		this.client = client;
+		this.engine = engine;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.eTag = eTag;
+		this.length = length;
+		this.partSize = partSize;
+		this.threads = threads;
+	}
+
+	/**
+	 * Download the object into <code>channel</code>, starting at <code>start</code>. If <code>first</code> is not null its content stream is used for the first range instead of
+	 * issuing another request. If a journal is supplied it tracks how much of the file is contiguous on disk.
+	 */
+	public void execute(S3Object first, FileChannel channel, long start, TransferProgress progress, DownloadJournal journal) throws IOException {
+		List<Range> ranges = getRanges(start);
+		log.debug("Downloading " + key + " using " + ranges.size() + " ranges");
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, ranges.size()), new RangeThreadFactory());
+		try {
+			List<Future<Range>> futures = new ArrayList<Future<Range>>();
+			for (Range range : ranges) {
+				S3Object object = range.offset == start ? first : null;
+				futures.add(executor.submit(new RangeCallable(range, object, channel)));
+			}
+			// Ranges are handed to the progress listeners in order, as soon as each one has landed on disk
+			for (Future<Range> future : futures) {
+				Range range = getResult(future);
+				if (progress != null) {
+					engine.replay(channel, range.offset, range.length, progress);
+				}
+				if (journal != null) {
+					journal.update(range.offset + range.length);
+				}
+			}
+		} catch (IOException e) {
+			cancel();
+			executor.shutdownNow();
+			awaitTermination(executor);
+			// Report the range that failed rather than one that was cancelled because of it
+			throw failure == null ? e : failure;
+		} finally {
+			executor.shutdownNow();
+			if (first != null) {
+				abort(first);
+			}
+		}
+	}
+
+	/**
+	 * Record the first range that fails and cancel the rest straight away, without waiting for the ranges before it to finish
+	 */
+	protected synchronized void fail(IOException e) {
+		if (failure == null && !failed) {
+			failure = e;
+		}
+		cancel();
+	}
+
+	/**
+	 * Abort every range that is still in flight. Blocked reads fail immediately instead of running to completion.
+	 */
+	protected void cancel() {
+		failed = true;
+		for (S3Object object : active) {
+			abort(object);
+		}
+	}
+
+	/**
+	 * Wait for the cancelled ranges to abort their streams, so nothing is still writing to the file once the download has failed
+	 */
+	protected void awaitTermination(ExecutorService executor) {
+		try {
+			if (!executor.awaitTermination(CANCEL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				log.debug("Ranges of " + key + " are still running after the download was cancelled");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	protected List<Range> getRanges(long start) {
+		List<Range> ranges = new ArrayList<Range>();
+		for (long offset = start; offset < length; offset += partSize) {
+			ranges.add(new Range(offset, Math.min(partSize, length - offset)));
+		}
+		return ranges;
+	}
+
+	protected Range getResult(Future<Range> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while downloading " + key);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			IOException exception = new IOException("Unexpected error downloading " + key);
+			exception.initCause(cause);
+			throw exception;
+		}
+	}
+
+	/**
+	 * Request a single range. Every range is pinned to the ETag of the original object so a concurrent re-deploy can't leave us with a file stitched together from two versions.
+	 */
+	protected S3Object getObject(Range range) throws IOException {
+		GetObjectRequest request = new GetObjectRequest(bucketName, key);
+		request.setRange(range.offset, range.offset + range.length - 1);
+		if (eTag != null) {
+			request.setMatchingETagConstraints(Collections.singletonList(eTag));
+		}
+		S3Object object = client.getObject(request);
+		if (object == null) {
+			throw new IOException(key + " was modified while it was being downloaded");
+		}
+		return object;
+	}
+
+	protected void abort(S3Object object) {
+		try {
+			object.getObjectContent().abort();
+		} catch (IOException e) {
+			log.debug("Error aborting stream for " + key, e);
+		}
+	}
+
+	protected static class Range {
+		final long offset;
+		final long length;
+
+		protected Range(long offset, long length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	protected class RangeCallable implements Callable<Range> {
+		Range range;
+		S3Object object;
+		FileChannel channel;
+		boolean shared;
+
+		protected RangeCallable(Range range, S3Object object, FileChannel channel) {
+			this.range = range;
+			this.object = object;
+			this.channel = channel;
+			this.shared = object != null;
+		}
+
+		public Range call() throws IOException {
+			if (object == null) {
+				try {
+					object = getObject(range);
+				} catch (IOException e) {
+					fail(e);
+					throw e;
+				}
+			}
+			active.add(object);
+			S3ObjectInputStream in = object.getObjectContent();
+			boolean complete = false;
+			try {
+				if (!failed) {
+					complete = engine.copy(in, channel, range.offset, range.length, null) == range.length;
+				}
+			} catch (IOException e) {
+				if (!failed) {
+					fail(e);
+					throw e;
+				}
+				// Some other range failed first and aborted this one
+			} finally {
+				active.remove(object);
+				// A stream shared with the full object request always has unread bytes left
+				engine.close(in, complete && !shared);
+			}
+			if (failed) {
+				throw new IOException("Download of " + key + " was cancelled");
+			}
+			if (!complete) {
+				IOException e = new IOException("Unexpected end of stream for " + key + " in range starting at byte " + range.offset);
+				fail(e);
+				throw e;
+			}
+			return range;
+		}
+	}
+
+	protected static class RangeThreadFactory implements ThreadFactory {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "S3-Range-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -15,10 +15,17 @@
  */
 package org.kuali.maven.wagon;
 
+import java.io.InputStream;
+
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 
 public interface RequestFactory {
 
 	PutObjectRequest getPutObjectRequest(PutFileContext context);
 
+	PutObjectRequest getPutObjectRequest(PutFileContext context, InputStream input, Digests digests);
+
+	InitiateMultipartUploadRequest getInitiateMultipartUploadRequest(PutFileContext context);
+
 }
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * <p>
+ * Shares one {@link AmazonS3Client} and one {@link TransferManager} between every wagon in this JVM that uses the same credentials, endpoint and client configuration. Sharing
+ * keeps the connection pool, and the TLS sessions in it, warm across wagon instances. That matters for parallel builds and for builds run by a long lived daemon.
+ * </p>
+ *
+ * <p>
+ * Clients are reference counted. Once the last wagon using a client releases it, the client is shut down after an idle delay, unless another wagon acquires it first.
+ * </p>
+ */
+public class S3ClientRegistry {
+
+	private static final Logger log = LoggerFactory.getLogger(S3ClientRegistry.class);
+	private static final S3ClientRegistry INSTANCE = new S3ClientRegistry();
+
+	public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private Timer timer;
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	protected S3ClientRegistry() {
+		super();
+	}
+
+	public static S3ClientRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Return the shared client for these settings, creating it if there isn't one. Every call must be matched by a call to {@link #release(Entry)}.
+	 */
+	public synchronized Entry acquire(AWSCredentials credentials, ClientConfiguration configuration, String endpoint) {
+		String key = getKey(credentials, configuration, endpoint);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			AmazonS3Client client = new AmazonS3Client(credentials, configuration);
+			if (!StringUtils.isBlank(endpoint)) {
+				client.setEndpoint(endpoint);
+			}
+			entry = new Entry(key, client, new TransferManager(client));
+			entries.put(key, entry);
+			log.debug("Created S3 client " + entry.id + " (" + entries.size() + " shared clients)");
+		}
+		if (entry.shutdown != null) {
+			entry.shutdown.cancel();
+			entry.shutdown = null;
+		}
+		entry.references++;
+		return entry;
+	}
+
+	/**
+	 * Stop using a client. If nothing else is using it the client is shut down once it has been idle for the idle timeout.
+	 */
+	public synchronized void release(Entry entry) {
+		if (entry.references == 0 || --entry.references > 0) {
+			return;
+		}
+		if (idleTimeout <= 0) {
+			shutdown(entry);
+			return;
+		}
+		entry.shutdown = new IdleShutdown(entry);
+		getTimer().schedule(entry.shutdown, idleTimeout);
+	}
+
+	protected synchronized void shutdown(Entry entry) {
+		if (entry.references > 0 || entries.get(entry.key) != entry) {
+			return;
+		}
+		entries.remove(entry.key);
+		entry.shutdown = null;
+		entry.closed = true;
+		// This shuts down the client underneath it as well
+		entry.transferManager.shutdownNow();
+		log.debug("Shut down idle S3 client " + entry.id);
+	}
+
+	protected Timer getTimer() {
+		if (timer == null) {
+			timer = new Timer("S3-Client-Reaper", true);
+		}
+		return timer;
+	}
+
+	/**
+	 * Clients are identified by a hash of everything that went into creating them, so the registry doesn't keep secret keys around as map keys
+	 */
+	protected static String getKey(AWSCredentials credentials, ClientConfiguration configuration, String endpoint) {
+		String token = credentials instanceof AWSSessionCredentials ? ((AWSSessionCredentials) credentials).getSessionToken() : null;
+		String key = StringUtils.join(new Object[] { credentials.getAWSAccessKeyId(), credentials.getAWSSecretKey(), token, endpoint, getFingerprint(configuration) }, '\n');
+		return Hashing.sha1().hashString(key, Charsets.UTF_8).toString();
+	}
+
+	/**
+	 * ClientConfiguration doesn't implement equals, so compare the values of all of its getters. That picks up settings that only newer versions of the SDK have as well.
+	 */
+	protected static String getFingerprint(ClientConfiguration configuration) {
+		Map<String, String> values = new TreeMap<String, String>();
+		for (Method method : configuration.getClass().getMethods()) {
+			String name = method.getName();
+			boolean getter = name.startsWith("get") || name.startsWith("is");
+			if (!getter || method.getParameterTypes().length > 0 || method.getDeclaringClass() == Object.class) {
+				continue;
+			}
+			try {
+				Object value = method.invoke(configuration);
+				values.put(name, value instanceof int[] ? Arrays.toString((int[]) value) : String.valueOf(value));
+			} catch (Exception e) {
+				throw new IllegalStateException("Unable to call " + name, e);
+			}
+		}
+		return values.toString();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public synchronized void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * A shared client and the transfer manager that runs on top of it
+	 */
+	public static class Entry {
+		private static int counter;
+
+		private final String key;
+		private final int id;
+		private final AmazonS3Client client;
+		private final TransferManager transferManager;
+		private int references;
+		private TimerTask shutdown;
+		private boolean closed;
+		private boolean warmed;
+
+		protected Entry(String key, AmazonS3Client client, TransferManager transferManager) {
+			this.key = key;
+			this.client = client;
+			this.transferManager = transferManager;
+			synchronized (Entry.class) {
+				this.id = ++counter;
+			}
+		}
+
+		public AmazonS3Client getClient() {
+			return client;
+		}
+
+		public TransferManager getTransferManager() {
+			return transferManager;
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * Returns true the first time it is called and false after that, so only the first wagon to use a new client warms up its connection pool
+		 */
+		public synchronized boolean claimWarmUp() {
+			if (warmed) {
+				return false;
+			}
+			warmed = true;
+			return true;
+		}
+	}
+
+	protected class IdleShutdown extends TimerTask {
+		private final Entry entry;
+
+		protected IdleShutdown(Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public void run() {
+			shutdown(entry);
+		}
+	}
+
+}
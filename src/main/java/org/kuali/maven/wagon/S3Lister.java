@@ -0,0 +1,173 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * Lists the keys in a bucket one page at a time, following the marker S3 hands back until the listing is complete. Results are passed to a {@link ListingHandler} as each page
+ * arrives, so a listing never has to fit in memory. A walk lists every common prefix below a starting prefix concurrently.
+ */
+public class S3Lister {
+
+	private static final Logger log = LoggerFactory.getLogger(S3Lister.class);
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	public static final String DELIMITER = "/";
+
+	AmazonS3 client;
+	String bucketName;
+	int threads;
+
+	public S3Lister(AmazonS3 client, String bucketName, int threads) {
+		this.client = client;
+		this.bucketName = bucketName;
+		this.threads = threads;
+	}
+
+	/**
+	 * List every key that begins with <code>prefix</code>. If <code>delimiter</code> is not null, keys containing the delimiter after the prefix are rolled up into common
+	 * prefixes. Returns the number of pages requested.
+	 */
+	public int list(String prefix, String delimiter, ListingHandler handler) {
+		ListObjectsRequest request = new ListObjectsRequest();
+		request.setBucketName(bucketName);
+		request.setPrefix(prefix);
+		request.setDelimiter(delimiter);
+		ObjectListing listing = client.listObjects(request);
+		int pages = 1;
+		handle(listing, handler);
+		while (listing.isTruncated()) {
+			listing = client.listNextBatchOfObjects(listing);
+			pages++;
+			handle(listing, handler);
+		}
+		return pages;
+	}
+
+	/**
+	 * List everything below <code>prefix</code> one level at a time. Each common prefix found is listed on its own thread, up to the concurrency limit of this lister. The handler
+	 * sees every object and every common prefix, in no particular order.
+	 */
+	public void walk(String prefix, ListingHandler handler) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ListThreadFactory());
+		try {
+			Walk walk = new Walk(executor, handler);
+			walk.submit(prefix);
+			walk.await();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	protected void handle(ObjectListing listing, ListingHandler handler) {
+		for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+			handler.handleObject(summary);
+		}
+		for (String commonPrefix : listing.getCommonPrefixes()) {
+			handler.handlePrefix(commonPrefix);
+		}
+	}
+
+	/**
+	 * Tracks the listings of a walk that are still outstanding. A listing submits the prefixes it finds before it counts itself as done, so the count only reaches zero once the
+	 * whole tree has been listed.
+	 */
+	protected class Walk {
+		ExecutorService executor;
+		ListingHandler handler;
+		AtomicInteger pending = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(1);
+		volatile RuntimeException failure;
+
+		protected Walk(ExecutorService executor, ListingHandler handler) {
+			this.executor = executor;
+			this.handler = handler;
+		}
+
+		protected void submit(final String prefix) {
+			pending.incrementAndGet();
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						if (failure == null) {
+							list(prefix, DELIMITER, new WalkHandler(Walk.this));
+						}
+					} catch (RuntimeException e) {
+						log.debug("Error listing " + prefix, e);
+						failure = e;
+						done.countDown();
+					} finally {
+						if (pending.decrementAndGet() == 0) {
+							done.countDown();
+						}
+					}
+				}
+			});
+		}
+
+		protected void await() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AmazonClientException("Interrupted while listing " + bucketName, e);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	protected static class WalkHandler implements ListingHandler {
+		Walk walk;
+
+		protected WalkHandler(Walk walk) {
+			this.walk = walk;
+		}
+
+		public void handleObject(S3ObjectSummary summary) {
+			walk.handler.handleObject(summary);
+		}
+
+		public void handlePrefix(String prefix) {
+			walk.handler.handlePrefix(prefix);
+			walk.submit(prefix);
+		}
+	}
+
+	protected static class ListThreadFactory implements ThreadFactory {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "S3-List-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
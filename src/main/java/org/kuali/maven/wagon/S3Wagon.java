@@ -15,32 +15,49 @@
  */
 package org.kuali.maven.wagon;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
 import org.apache.maven.wagon.TransferFailedException;
 import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.apache.maven.wagon.events.TransferEvent;
 import org.apache.maven.wagon.proxy.ProxyInfo;
 import org.apache.maven.wagon.repository.Repository;
 import org.apache.maven.wagon.repository.RepositoryPermissions;
-import org.kuali.common.aws.s3.S3Utils;
+import org.apache.maven.wagon.resource.Resource;
 import org.kuali.common.aws.s3.SimpleFormatter;
 import org.kuali.common.threads.ExecutionStatistics;
-import org.kuali.common.threads.ThreadHandlerContext;
-import org.kuali.common.threads.ThreadInvoker;
 import org.kuali.common.threads.listener.PercentCompleteListener;
+import org.kuali.common.threads.listener.ProgressListener;
 import org.kuali.maven.wagon.auth.AwsCredentials;
 import org.kuali.maven.wagon.auth.AwsSessionCredentials;
 import org.kuali.maven.wagon.auth.MavenAwsCredentialsProviderChain;
+import org.kuali.maven.wagon.cache.ArtifactCache;
+import org.kuali.maven.wagon.cache.BucketCache;
+import org.kuali.maven.wagon.cache.NegativeCache;
+import org.kuali.maven.wagon.cache.ObjectMetadataCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,14 +72,19 @@ import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.internal.Mimetypes;
 import com.amazonaws.services.s3.internal.RepeatableFileInputStream;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.Region;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.google.common.base.Optional;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 
 /**
  * <p>
@@ -98,19 +120,206 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 	public static final int DEFAULT_MIN_THREAD_COUNT = 10;
 	public static final int DEFAULT_MAX_THREAD_COUNT = 50;
 	public static final int DEFAULT_DIVISOR = 50;
+	/**
+	 * Set <code>maven.wagon.threads.virtual</code> to <code>true</code> to upload directories on virtual threads when running on Java 21 or later. The number of uploads in flight
+	 * is then capped by <code>maven.wagon.maxConnections</code>, the size of the HTTP connection pool.
+	 */
+	public static final String VIRTUAL_THREADS_KEY = "maven.wagon.threads.virtual";
+	public static final String MAX_CONNECTIONS_KEY = "maven.wagon.maxConnections";
+	public static final boolean DEFAULT_VIRTUAL_THREADS = false;
+	public static final int DEFAULT_MAX_CONNECTIONS = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+	/**
+	 * Set <code>maven.wagon.threads.adaptive</code> to <code>true</code> to have directory uploads start at the minimum number of threads and adjust concurrency to how S3
+	 * responds, backing off when it throttles
+	 */
+	public static final String ADAPTIVE_KEY = "maven.wagon.threads.adaptive";
+	public static final boolean DEFAULT_ADAPTIVE = false;
+	/**
+	 * Milliseconds to wait for data on an open connection. The connect timeout is the regular wagon timeout.
+	 */
+	public static final String READ_TIMEOUT_KEY = "maven.wagon.readTimeout";
 	public static final int DEFAULT_READ_TIMEOUT = 60 * 1000;
+	/**
+	 * Socket settings for the connections to S3. Buffer sizes of zero leave the operating system defaults in place. Keep-alive, connection time to live and idle eviction
+	 * (both in milliseconds) need a version of the AWS SDK that supports them. Every transport setting, including <code>maven.wagon.maxConnections</code> and
+	 * <code>maven.wagon.readTimeout</code>, can be set for a single repository by adding <code>.&lt;repositoryId&gt;</code> to the property name.
+	 */
+	public static final String SEND_BUFFER_SIZE_KEY = "maven.wagon.transport.sendBufferSize";
+	public static final String RECEIVE_BUFFER_SIZE_KEY = "maven.wagon.transport.receiveBufferSize";
+	public static final String TCP_KEEP_ALIVE_KEY = "maven.wagon.transport.tcpKeepAlive";
+	public static final String CONNECTION_TTL_KEY = "maven.wagon.transport.connectionTtl";
+	public static final String MAX_IDLE_KEY = "maven.wagon.transport.maxIdle";
+	public static final int DEFAULT_SEND_BUFFER_SIZE = 0;
+	public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 0;
+	public static final boolean DEFAULT_TCP_KEEP_ALIVE = true;
+	public static final long DEFAULT_CONNECTION_TTL = -1;
+	public static final long DEFAULT_MAX_IDLE = 60 * 1000;
+	/**
+	 * Set <code>maven.wagon.transport.warmConnections</code> to open that many connections to the bucket in the background while connecting. This only happens when a new
+	 * client is created, not when an already warm client is shared.
+	 */
+	public static final String WARM_CONNECTIONS_KEY = "maven.wagon.transport.warmConnections";
+	public static final int DEFAULT_WARM_CONNECTIONS = 0;
+	/**
+	 * Buckets that were validated within <code>maven.wagon.bucketCache.ttl</code> milliseconds (default one day) are not validated again, and are reached through the endpoint
+	 * of their region straight away. What was validated is kept in <code>maven.wagon.bucketCache.file</code>, which every build on the host shares. A ttl of zero turns this
+	 * off, and with it the region lookup, so every connect validates the bucket through the default endpoint as before.
+	 */
+	public static final String BUCKET_CACHE_FILE_KEY = "maven.wagon.bucketCache.file";
+	public static final String BUCKET_CACHE_TTL_KEY = "maven.wagon.bucketCache.ttl";
+	public static final String DEFAULT_BUCKET_CACHE_FILE = new File(System.getProperty("user.home"), ".m2/s3-wagon/buckets.properties").getPath();
+	public static final long DEFAULT_BUCKET_CACHE_TTL = 24 * 60 * 60 * 1000;
+	/**
+	 * Objects at least this many bytes in size are downloaded as a set of byte ranges fetched concurrently. Zero disables ranged downloads.
+	 */
+	public static final String DOWNLOAD_THRESHOLD_KEY = "maven.wagon.download.threshold";
+	public static final String DOWNLOAD_PART_SIZE_KEY = "maven.wagon.download.partSize";
+	public static final String DOWNLOAD_THREADS_KEY = "maven.wagon.download.threads";
+	public static final long DEFAULT_DOWNLOAD_THRESHOLD = 32 * 1024 * 1024;
+	public static final long DEFAULT_DOWNLOAD_PART_SIZE = 8 * 1024 * 1024;
+	public static final int DEFAULT_DOWNLOAD_THREADS = 8;
+	/**
+	 * Size of the buffers used to copy downloads to disk and whether they are allocated outside the Java heap
+	 */
+	public static final String DOWNLOAD_BUFFER_SIZE_KEY = "maven.wagon.download.bufferSize";
+	public static final String DOWNLOAD_DIRECT_BUFFERS_KEY = "maven.wagon.download.directBuffers";
+	public static final int DEFAULT_DOWNLOAD_BUFFER_SIZE = 256 * 1024;
+	public static final boolean DEFAULT_DOWNLOAD_DIRECT_BUFFERS = false;
+	/**
+	 * Objects at least this many bytes in size are downloaded to a <code>.part</code> file that a later attempt can resume from. Zero disables resumable downloads.
+	 */
+	public static final String RESUME_THRESHOLD_KEY = "maven.wagon.download.resumeThreshold";
+	public static final long DEFAULT_RESUME_THRESHOLD = 8 * 1024 * 1024;
+	/**
+	 * Set <code>maven.wagon.cache.dir</code> to enable a cache of downloaded objects shared by every build on this host
+	 */
+	public static final String CACHE_DIR_KEY = "maven.wagon.cache.dir";
+	public static final String CACHE_MAX_SIZE_KEY = "maven.wagon.cache.maxSize";
+	public static final long DEFAULT_CACHE_MAX_SIZE = 10L * 1024 * 1024 * 1024;
+	/**
+	 * How long, in milliseconds, object metadata is remembered for, and how many objects are remembered. A ttl of zero disables the metadata cache.
+	 */
+	public static final String METADATA_CACHE_TTL_KEY = "maven.wagon.metadata.cache.ttl";
+	public static final String METADATA_CACHE_SIZE_KEY = "maven.wagon.metadata.cache.size";
+	public static final long DEFAULT_METADATA_CACHE_TTL = 60 * 1000;
+	public static final long DEFAULT_METADATA_CACHE_SIZE = 10000;
+	/**
+	 * Set <code>maven.wagon.negative.cache.dir</code> to remember keys that were not found across builds. How long they are remembered follows a Maven style update policy
+	 * (<code>always</code>, <code>daily</code>, <code>never</code> or <code>interval:N</code>). The policy for a single repository can be set with
+	 * <code>maven.wagon.negative.cache.policy.&lt;repositoryId&gt;</code>.
+	 */
+	public static final String NEGATIVE_CACHE_DIR_KEY = "maven.wagon.negative.cache.dir";
+	public static final String NEGATIVE_CACHE_POLICY_KEY = "maven.wagon.negative.cache.policy";
+	public static final String DEFAULT_NEGATIVE_CACHE_POLICY = NegativeCache.DAILY;
+	/**
+	 * The number of directories listed at once when walking a tree
+	 */
+	public static final String LIST_THREADS_KEY = "maven.wagon.list.threads";
+	public static final int DEFAULT_LIST_THREADS = 8;
+	/**
+	 * Set <code>maven.wagon.incremental</code> to <code>true</code> to have <code>putDirectory</code> skip files that are already in S3 with the same content. Each incremental
+	 * deploy leaves a manifest at the root of the destination that the next deploy compares against.
+	 */
+	public static final String INCREMENTAL_KEY = "maven.wagon.incremental";
+	public static final boolean DEFAULT_INCREMENTAL = false;
+	/**
+	 * Set <code>maven.wagon.prune</code> to <code>true</code> to have <code>putDirectory</code> delete objects below the destination that aren't part of the deploy. With
+	 * <code>maven.wagon.prune.dryRun</code> the objects are only logged.
+	 */
+	public static final String PRUNE_KEY = "maven.wagon.prune";
+	public static final String PRUNE_DRY_RUN_KEY = "maven.wagon.prune.dryRun";
+	public static final boolean DEFAULT_PRUNE = false;
+	public static final boolean DEFAULT_PRUNE_DRY_RUN = false;
+	/**
+	 * Wagons with the same credentials and client settings share one S3 client. Set <code>maven.wagon.client.idleTimeout</code> to the number of milliseconds a client is kept
+	 * after the last wagon using it disconnects. Default is one minute.
+	 */
+	public static final String CLIENT_IDLE_TIMEOUT_KEY = "maven.wagon.client.idleTimeout";
+	public static final long DEFAULT_CLIENT_IDLE_TIMEOUT = S3ClientRegistry.DEFAULT_IDLE_TIMEOUT;
+	/**
+	 * Files that are at least <code>maven.wagon.multipart.threshold</code> bytes are uploaded in parts of <code>maven.wagon.multipart.partSize</code> bytes (at least 5MB). A
+	 * single file has up to <code>maven.wagon.multipart.threads</code> parts in flight at once. During <code>putDirectory</code> each part is scheduled like a file of its own
+	 * instead.
+	 */
+	public static final String MULTIPART_THRESHOLD_KEY = "maven.wagon.multipart.threshold";
+	public static final String MULTIPART_PART_SIZE_KEY = "maven.wagon.multipart.partSize";
+	public static final String MULTIPART_THREADS_KEY = "maven.wagon.multipart.threads";
+	public static final long DEFAULT_MULTIPART_THRESHOLD = 100 * 1024 * 1024;
+	public static final long DEFAULT_MULTIPART_PART_SIZE = 16 * 1024 * 1024;
+	public static final int DEFAULT_MULTIPART_THREADS = 10;
+	/**
+	 * A multipart upload of a single file that fails is left in S3 and recorded in <code>maven.wagon.upload.journalDir</code>, so uploading the same file again only sends the
+	 * parts S3 doesn't have yet. Uploads recorded there that haven't made progress for <code>maven.wagon.upload.staleAfter</code> milliseconds (default one week) are aborted.
+	 * Set <code>maven.wagon.upload.resume</code> to false to abort failed uploads straight away instead.
+	 */
+	public static final String UPLOAD_RESUME_KEY = "maven.wagon.upload.resume";
+	public static final String UPLOAD_JOURNAL_DIR_KEY = "maven.wagon.upload.journalDir";
+	public static final String UPLOAD_STALE_AFTER_KEY = "maven.wagon.upload.staleAfter";
+	public static final boolean DEFAULT_UPLOAD_RESUME = true;
+	public static final String DEFAULT_UPLOAD_JOURNAL_DIR = new File(System.getProperty("user.home"), ".m2/s3-wagon/uploads").getPath();
+	public static final long DEFAULT_UPLOAD_STALE_AFTER = 7 * 24 * 60 * 60 * 1000L;
+	/**
+	 * Files smaller than <code>maven.wagon.smallObject.threshold</code> bytes (default 16K) are read into memory in one go and sent with a single PUT. Zero turns this off.
+	 */
+	public static final String SMALL_OBJECT_THRESHOLD_KEY = "maven.wagon.smallObject.threshold";
+	public static final int DEFAULT_SMALL_OBJECT_THRESHOLD = 16 * 1024;
 	public static final CannedAccessControlList DEFAULT_ACL = CannedAccessControlList.PublicRead;
+	private static final String US_EAST_1 = "us-east-1";
+	private static final long MAX_CHECKSUM_FILE_SIZE = 1024;
 	private static final File TEMP_DIR = getCanonicalFile(System.getProperty("java.io.tmpdir"));
 	private static final String TEMP_DIR_PATH = TEMP_DIR.getAbsolutePath();
 
-	ThreadInvoker invoker = new ThreadInvoker();
 	SimpleFormatter formatter = new SimpleFormatter();
 	int minThreads = getMinThreads();
 	int maxThreads = getMaxThreads();
 	int divisor = getDivisor();
+	boolean virtualThreads = getValue(VIRTUAL_THREADS_KEY, DEFAULT_VIRTUAL_THREADS);
+	int maxConnections = getValue(MAX_CONNECTIONS_KEY, DEFAULT_MAX_CONNECTIONS);
+	boolean adaptive = getValue(ADAPTIVE_KEY, DEFAULT_ADAPTIVE);
 	String protocol = getValue(PROTOCOL_KEY, HTTPS);
 	boolean http = HTTP.equals(protocol);
-	int readTimeout = DEFAULT_READ_TIMEOUT;
+	int readTimeout = getValue(READ_TIMEOUT_KEY, DEFAULT_READ_TIMEOUT);
+	int sendBufferSize = getValue(SEND_BUFFER_SIZE_KEY, DEFAULT_SEND_BUFFER_SIZE);
+	int receiveBufferSize = getValue(RECEIVE_BUFFER_SIZE_KEY, DEFAULT_RECEIVE_BUFFER_SIZE);
+	boolean tcpKeepAlive = getValue(TCP_KEEP_ALIVE_KEY, DEFAULT_TCP_KEEP_ALIVE);
+	long connectionTtl = getValue(CONNECTION_TTL_KEY, DEFAULT_CONNECTION_TTL);
+	long maxIdle = getValue(MAX_IDLE_KEY, DEFAULT_MAX_IDLE);
+	int warmConnections = getValue(WARM_CONNECTIONS_KEY, DEFAULT_WARM_CONNECTIONS);
+	String bucketCacheFile = getValue(BUCKET_CACHE_FILE_KEY, DEFAULT_BUCKET_CACHE_FILE);
+	long bucketCacheTtl = getValue(BUCKET_CACHE_TTL_KEY, DEFAULT_BUCKET_CACHE_TTL);
+	BucketCache bucketCache;
+	long downloadThreshold = getValue(DOWNLOAD_THRESHOLD_KEY, DEFAULT_DOWNLOAD_THRESHOLD);
+	long downloadPartSize = getValue(DOWNLOAD_PART_SIZE_KEY, DEFAULT_DOWNLOAD_PART_SIZE);
+	int downloadThreads = getValue(DOWNLOAD_THREADS_KEY, DEFAULT_DOWNLOAD_THREADS);
+	int downloadBufferSize = getValue(DOWNLOAD_BUFFER_SIZE_KEY, DEFAULT_DOWNLOAD_BUFFER_SIZE);
+	boolean directBuffers = getValue(DOWNLOAD_DIRECT_BUFFERS_KEY, DEFAULT_DOWNLOAD_DIRECT_BUFFERS);
+	long resumeThreshold = getValue(RESUME_THRESHOLD_KEY, DEFAULT_RESUME_THRESHOLD);
+	String cacheDirectory = getValue(CACHE_DIR_KEY, (String) null);
+	long cacheMaxSize = getValue(CACHE_MAX_SIZE_KEY, DEFAULT_CACHE_MAX_SIZE);
+	long metadataCacheTtl = getValue(METADATA_CACHE_TTL_KEY, DEFAULT_METADATA_CACHE_TTL);
+	long metadataCacheSize = getValue(METADATA_CACHE_SIZE_KEY, DEFAULT_METADATA_CACHE_SIZE);
+	ArtifactCache artifactCache;
+	ObjectMetadataCache metadataCache;
+	String negativeCacheDirectory = getValue(NEGATIVE_CACHE_DIR_KEY, (String) null);
+	String negativeCachePolicy = getValue(NEGATIVE_CACHE_POLICY_KEY, DEFAULT_NEGATIVE_CACHE_POLICY);
+	NegativeCache negativeCache;
+	int listThreads = getValue(LIST_THREADS_KEY, DEFAULT_LIST_THREADS);
+	boolean incremental = getValue(INCREMENTAL_KEY, DEFAULT_INCREMENTAL);
+	boolean prune = getValue(PRUNE_KEY, DEFAULT_PRUNE);
+	boolean pruneDryRun = getValue(PRUNE_DRY_RUN_KEY, DEFAULT_PRUNE_DRY_RUN);
+	long clientIdleTimeout = getValue(CLIENT_IDLE_TIMEOUT_KEY, DEFAULT_CLIENT_IDLE_TIMEOUT);
+	S3ClientRegistry.Entry clientEntry;
+	long multipartThreshold = getValue(MULTIPART_THRESHOLD_KEY, DEFAULT_MULTIPART_THRESHOLD);
+	long multipartPartSize = getValue(MULTIPART_PART_SIZE_KEY, DEFAULT_MULTIPART_PART_SIZE);
+	int multipartThreads = getValue(MULTIPART_THREADS_KEY, DEFAULT_MULTIPART_THREADS);
+	MultipartEngine multipartEngine;
+	DigestRegistry digestRegistry = new DigestRegistry();
+	int smallObjectThreshold = getValue(SMALL_OBJECT_THRESHOLD_KEY, DEFAULT_SMALL_OBJECT_THRESHOLD);
+	SmallObjectUploader smallObjectUploader;
+	boolean uploadResume = getValue(UPLOAD_RESUME_KEY, DEFAULT_UPLOAD_RESUME);
+	String uploadJournalDir = getValue(UPLOAD_JOURNAL_DIR_KEY, DEFAULT_UPLOAD_JOURNAL_DIR);
+	long uploadStaleAfter = getValue(UPLOAD_STALE_AFTER_KEY, DEFAULT_UPLOAD_STALE_AFTER);
+	DownloadEngine downloadEngine;
 	CannedAccessControlList acl = DEFAULT_ACL;
 	TransferManager transferManager;
 
@@ -173,8 +382,9 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 		return CannedAccessControlList.valueOf(filePermissions.trim());
 	}
 
-	protected ClientConfiguration getClientConfiguration() {
+	protected ClientConfiguration getClientConfiguration(Repository repository) {
 		ClientConfiguration configuration = new ClientConfiguration();
+		getTransportProfile(repository).apply(configuration);
 		if (http) {
 			log.info("http selected");
 			configuration.setProtocol(Protocol.HTTP);
@@ -182,19 +392,119 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 		return configuration;
 	}
 
-	protected AmazonS3Client getAmazonS3Client(AWSCredentials credentials) {
-		ClientConfiguration configuration = getClientConfiguration();
-		return new AmazonS3Client(credentials, configuration);
+	/**
+	 * Work out the transport settings for a repository. Settings given for this repository in particular win over the general ones. The connection pool is never smaller than
+	 * the number of upload threads, so a thread never has to wait for a connection.
+	 */
+	protected TransportProfile getTransportProfile(Repository repository) {
+		String suffix = "." + repository.getId();
+		TransportProfile profile = new TransportProfile();
+		profile.setMaxConnections(Math.max(getMaxConnections(repository), maxThreads));
+		profile.setConnectTimeout(getTimeout());
+		profile.setReadTimeout(getValue(READ_TIMEOUT_KEY + suffix, readTimeout));
+		profile.setSendBufferSize(getValue(SEND_BUFFER_SIZE_KEY + suffix, sendBufferSize));
+		profile.setReceiveBufferSize(getValue(RECEIVE_BUFFER_SIZE_KEY + suffix, receiveBufferSize));
+		profile.setTcpKeepAlive(getValue(TCP_KEEP_ALIVE_KEY + suffix, tcpKeepAlive));
+		profile.setConnectionTtl(getValue(CONNECTION_TTL_KEY + suffix, connectionTtl));
+		profile.setMaxIdle(getValue(MAX_IDLE_KEY + suffix, maxIdle));
+		return profile;
+	}
+
+	/**
+	 * Return the size of the HTTP connection pool for this repository, which can be set per repository
+	 */
+	protected int getMaxConnections(Repository repository) {
+		return getValue(MAX_CONNECTIONS_KEY + "." + repository.getId(), maxConnections);
+	}
+
+	/**
+	 * Borrow the client shared by every wagon in this JVM with the same credentials, settings and endpoint. A null endpoint is the default endpoint.
+	 */
+	protected S3ClientRegistry.Entry getClientEntry(AWSCredentials credentials, Repository repository, String endpoint) {
+		S3ClientRegistry registry = S3ClientRegistry.getInstance();
+		registry.setIdleTimeout(clientIdleTimeout);
+		return registry.acquire(credentials, getClientConfiguration(repository), endpoint);
+	}
+
+	/**
+	 * Ask S3 which region the bucket is in and return the endpoint for that region, or null for the default endpoint. Also returns null if the bucket doesn't exist yet or we
+	 * aren't allowed to ask.
+	 */
+	protected String getBucketEndpoint(AWSCredentials credentials, Repository repository) {
+		S3ClientRegistry.Entry entry = getClientEntry(credentials, repository, null);
+		try {
+			return getEndpoint(entry.getClient().getBucketLocation(repository.getHost()));
+		} catch (AmazonClientException e) {
+			log.debug("Unable to look up the region of " + repository.getHost() + ": " + e.getMessage());
+			return null;
+		} finally {
+			S3ClientRegistry.getInstance().release(entry);
+		}
+	}
+
+	/**
+	 * Convert a bucket location into the endpoint for that region. Buckets in US Standard use the default endpoint.
+	 */
+	protected static String getEndpoint(String location) {
+		String region;
+		try {
+			region = Region.fromValue(location).getFirstRegionId();
+		} catch (IllegalArgumentException e) {
+			region = location;
+		}
+		if (StringUtils.isBlank(region) || US_EAST_1.equals(region)) {
+			return null;
+		}
+		return "s3-" + region + ".amazonaws.com";
 	}
 
 	@Override
 	protected void connectToRepository(Repository source, AuthenticationInfo auth, ProxyInfo proxy) {
 
 		AWSCredentials credentials = getCredentials(auth);
-		this.client = getAmazonS3Client(credentials);
-		this.transferManager = new TransferManager(credentials);
 		this.bucketName = source.getHost();
-		validateBucket(client, bucketName);
+
+		// A bucket that was validated recently is used straight away, through the endpoint of its region
+		this.bucketCache = bucketCacheTtl > 0 ? new BucketCache(new File(bucketCacheFile), bucketCacheTtl) : null;
+		String bucketKey = credentials.getAWSAccessKeyId() + "/" + bucketName;
+		BucketCache.Entry validated = bucketCache == null ? null : bucketCache.get(bucketKey);
+		// Looking up the region costs a request, which only pays off if the answer is kept for later builds
+		String endpoint = null;
+		if (validated != null) {
+			endpoint = validated.getEndpoint();
+		} else if (bucketCache != null) {
+			endpoint = getBucketEndpoint(credentials, source);
+		}
+		this.clientEntry = getClientEntry(credentials, source, endpoint);
+		this.client = clientEntry.getClient();
+		this.transferManager = clientEntry.getTransferManager();
+		this.downloadEngine = new DownloadEngine(BufferPool.getInstance(downloadBufferSize, directBuffers));
+		this.multipartEngine = new MultipartEngine(multipartThreshold, multipartPartSize, multipartThreads);
+		this.smallObjectUploader = new SmallObjectUploader(smallObjectThreshold);
+		if (uploadResume) {
+			multipartEngine.setJournals(new File(uploadJournalDir), uploadStaleAfter);
+		}
+		if (!StringUtils.isBlank(cacheDirectory)) {
+			this.artifactCache = ArtifactCache.getInstance(new File(cacheDirectory), cacheMaxSize);
+		}
+		this.metadataCache = ObjectMetadataCache.getInstance(metadataCacheTtl, metadataCacheSize);
+		if (!StringUtils.isBlank(negativeCacheDirectory)) {
+			String policy = getValue(NEGATIVE_CACHE_POLICY_KEY + "." + source.getId(), negativeCachePolicy);
+			this.negativeCache = new NegativeCache(new File(negativeCacheDirectory), NegativeCache.getTtl(policy));
+		}
+		int connections = Math.min(getValue(WARM_CONNECTIONS_KEY + "." + source.getId(), warmConnections), getMaxConnections(source));
+		if (connections > 0 && clientEntry.claimWarmUp()) {
+			// Runs alongside the bucket validation below
+			ConnectionWarmer.start(client, bucketName, connections);
+		}
+		if (validated == null) {
+			validateBucket(client, bucketName);
+			if (bucketCache != null) {
+				bucketCache.put(bucketKey, endpoint);
+			}
+		} else {
+			log.debug("Bucket " + bucketName + " was validated " + formatter.getTime(System.currentTimeMillis() - validated.getValidated()) + " ago");
+		}
 		this.basedir = getBaseDir(source);
 
 		// If they've specified <filePermissions> in settings.xml, that always wins
@@ -208,16 +518,41 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 	@Override
 	protected boolean doesRemoteResourceExist(final String resourceName) {
 		try {
-			client.getObjectMetadata(bucketName, basedir + resourceName);
+			return getObjectMetadata(basedir + resourceName).isPresent();
 		} catch (AmazonClientException e) {
 			return false;
 		}
-		return true;
+	}
+
+	/**
+	 * Return the metadata for the key, or absent if the key doesn't exist. Keys that were recently found to be missing aren't looked up again.
+	 */
+	protected Optional<ObjectMetadata> getObjectMetadata(String key) {
+		if (isKnownAbsent(key)) {
+			return Optional.absent();
+		}
+		Optional<ObjectMetadata> metadata = metadataCache.get(client, bucketName, key);
+		if (!metadata.isPresent() && negativeCache != null) {
+			negativeCache.markAbsent(bucketName, key);
+		}
+		return metadata;
+	}
+
+	protected boolean isKnownAbsent(String key) {
+		return negativeCache != null && negativeCache.isAbsent(bucketName, key);
 	}
 
 	@Override
 	protected void disconnectFromRepository() {
-		// Nothing to do for S3
+		if (metadataCache != null) {
+			log.debug("Metadata cache: " + metadataCache.getStats());
+		}
+		digestRegistry.clear();
+		if (clientEntry != null) {
+			// The client is shared, so it is only shut down once every wagon using it has let go of it
+			S3ClientRegistry.getInstance().release(clientEntry);
+			clientEntry = null;
+		}
 	}
 
 	/**
@@ -225,39 +560,281 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 	 */
 	@Override
 	protected void getResource(final String resourceName, final File destination, final TransferProgress progress) throws ResourceDoesNotExistException, IOException {
-		// Obtain the object from S3
-		S3Object object = null;
+		String key = basedir + resourceName;
+		File part = getPartFile(resourceName, destination);
+
+		// Another build sharing this directory may be resuming the same download
+		DownloadJournal.Lock lock = DownloadJournal.getJournalFile(part).exists() ? DownloadJournal.lock(part) : null;
 		try {
-			String key = basedir + resourceName;
-			object = client.getObject(bucketName, key);
+			// Pick up where a previous attempt left off, as long as the object hasn't changed since
+			DownloadJournal journal = lock == null ? null : DownloadJournal.load(part, bucketName, key);
+			S3Object object = journal == null ? null : getRemainder(journal);
+			if (journal != null && object == null) {
+				log.debug("Discarding partial download of " + key);
+				journal.delete();
+				journal = null;
+			}
+			if (journal == null && lock != null) {
+				// A fresh download takes the lock itself if it turns out to need a journal
+				lock.release();
+				lock = null;
+			}
+
+			// If there is a cached copy, only download the object if its ETag has changed
+			InputStream cached = null;
+			try {
+				if (object == null) {
+					ArtifactCache.Entry entry = artifactCache == null ? null : artifactCache.get(bucketName, key);
+					cached = entry == null ? null : openQuietly(entry.getFile());
+					object = getObject(resourceName, key, cached == null ? null : entry.getETag());
+					if (object == null) {
+						log.debug("Using cached copy of " + key);
+						copy(cached, entry.getFile().length(), destination, progress);
+						return;
+					}
+				}
+			} finally {
+				IOUtils.closeQuietly(cached);
+			}
+
+			String eTag = journal == null ? object.getObjectMetadata().getETag() : journal.getETag();
+			download(key, object, part, journal, destination, progress);
+			cache(key, eTag, destination);
+		} finally {
+			if (lock != null) {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Download the object into the destination. Small objects are written straight to the destination. Large objects go through a journaled <code>.part</code> file that is
+	 * locked for the duration of the download. A journal that is passed in is being resumed, and the caller already holds its lock.
+	 */
+
+	protected void download(String key, S3Object object, File part, DownloadJournal journal, File destination, TransferProgress progress) throws IOException {
+		long offset = journal == null ? 0 : journal.getBytes();
+		long length = offset + object.getObjectMetadata().getContentLength();
+		if (journal == null && !isResumableDownload(length)) {
+			// Small objects go straight into the destination file
+			RandomAccessFile file = new RandomAccessFile(destination, "rw");
+			try {
+				file.setLength(length);
+				download(object, key, file.getChannel(), 0, length, progress, null);
+			} finally {
+				IOUtils.closeQuietly(file);
+			}
+			return;
+		}
+
+		// Large objects are written to a .part file that is journaled as it fills up
+		DownloadJournal.Lock lock = null;
+		if (journal == null) {
+			lock = DownloadJournal.lock(part);
+			journal = new DownloadJournal(part, bucketName, key, object.getObjectMetadata().getETag(), length);
+		} else {
+			log.info("Resuming download of " + key + " at byte " + offset);
+		}
+		try {
+			downloadPart(key, object, journal, offset, progress);
+			destination.delete();
+			FileUtils.moveFile(part, destination);
+			journal.delete();
+		} finally {
+			if (lock != null) {
+				lock.release();
+			}
+		}
+	}
+
+	protected void downloadPart(String key, S3Object object, DownloadJournal journal, long offset, TransferProgress progress) throws IOException {
+		boolean success = false;
+		RandomAccessFile file = new RandomAccessFile(journal.getPart(), "rw");
+		try {
+			file.setLength(journal.getLength());
+			FileChannel channel = file.getChannel();
+			journal.setChannel(channel);
+			// The listeners haven't seen the bytes received by the previous attempt
+			downloadEngine.replay(channel, 0, offset, progress);
+			download(object, key, channel, offset, journal.getLength(), progress, journal);
+			success = true;
+		} finally {
+			// The last checkpoint is saved while the channel is still open so it can be forced to disk
+			if (!success && journal.getBytes() > 0) {
+				journal.save();
+			}
+			journal.setChannel(null);
+			IOUtils.closeQuietly(file);
+			if (!success && journal.getBytes() == 0) {
+				journal.delete();
+			}
+		}
+	}
+
+	/**
+	 * A single conditional GET replaces the HEAD request followed by a GET. S3 answers with a 304, and the SDK with a null object, when the object has not been modified since
+	 * the timestamp.
+	 */
+	@Override
+	protected boolean getResourceIfNewer(String resourceName, File destination, long timestamp) throws Exception {
+		String key = basedir + resourceName;
+		Optional<ObjectMetadata> metadata = metadataCache.getIfPresent(bucketName, key);
+		if (metadata != null && metadata.isPresent() && metadata.get().getLastModified().getTime() <= timestamp) {
+			return false;
+		}
+
+		GetObjectRequest request = new GetObjectRequest(bucketName, key);
+		request.setModifiedSinceConstraint(new Date(timestamp));
+		S3Object object = getObject(resourceName, request);
+		if (object == null) {
+			return false;
+		}
+
+		Resource resource = new Resource(resourceName);
+		TransferListenerSupport listeners = getTransferListeners();
+		listeners.fireTransferInitiated(resource, TransferEvent.REQUEST_GET);
+		listeners.fireTransferStarted(resource, TransferEvent.REQUEST_GET);
+		TransferProgress progress = new TransferProgress(resource, TransferEvent.REQUEST_GET, listeners);
+		download(key, object, getPartFile(resourceName, destination), null, destination, progress);
+		cache(key, object.getObjectMetadata().getETag(), destination);
+		metadataCache.put(bucketName, key, object.getObjectMetadata());
+		listeners.fireTransferCompleted(resource, TransferEvent.REQUEST_GET);
+		return true;
+	}
+
+	/**
+	 * Obtain the object from S3. If an ETag is supplied, null is returned when the object still has that ETag.
+	 */
+	protected S3Object getObject(String resourceName, String key, String eTag) throws ResourceDoesNotExistException {
+		GetObjectRequest request = new GetObjectRequest(bucketName, key);
+		if (eTag != null) {
+			request.setNonmatchingETagConstraints(Collections.singletonList(eTag));
+		}
+		return getObject(resourceName, request);
+	}
+
+	/**
+	 * Obtain the object from S3. Returns null if the request carries constraints the object doesn't meet.
+	 */
+	protected S3Object getObject(String resourceName, GetObjectRequest request) throws ResourceDoesNotExistException {
+		if (isKnownAbsent(request.getKey())) {
+			throw new ResourceDoesNotExistException("Resource " + resourceName + " does not exist in the repository");
+		}
+		try {
+			return client.getObject(request);
 		} catch (Exception e) {
+			if (negativeCache != null && isNotFound(e)) {
+				negativeCache.markAbsent(bucketName, request.getKey());
+			}
 			throw new ResourceDoesNotExistException("Resource " + resourceName + " does not exist in the repository", e);
 		}
+	}
+
+	protected boolean isNotFound(Exception e) {
+		return e instanceof AmazonServiceException && ((AmazonServiceException) e).getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND;
+	}
 
-		//
-		InputStream in = null;
-		OutputStream out = null;
+	/**
+	 * Copy a local file to the destination, notifying the listeners as we go
+	 */
+	protected void copy(InputStream in, long length, File destination, TransferProgress progress) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(destination, "rw");
 		try {
-			in = object.getObjectContent();
-			out = new TransferProgressFileOutputStream(destination, progress);
-			byte[] buffer = new byte[1024];
-			int length;
-			while ((length = in.read(buffer)) != -1) {
-				out.write(buffer, 0, length);
+			file.setLength(length);
+			long copied = downloadEngine.copy(in, file.getChannel(), 0, length, progress);
+			if (copied != length) {
+				throw new IOException("Expected " + length + " bytes but only copied " + copied);
 			}
 		} finally {
-			IOUtils.closeQuietly(in);
-			IOUtils.closeQuietly(out);
+			IOUtils.closeQuietly(file);
+		}
+	}
+
+	/**
+	 * Store a freshly downloaded file in the artifact cache. Problems with the cache never fail the download.
+	 */
+	protected void cache(String key, String eTag, File file) {
+		if (artifactCache == null || StringUtils.isBlank(eTag)) {
+			return;
+		}
+		try {
+			artifactCache.put(bucketName, key, eTag, file);
+		} catch (IOException e) {
+			log.warn("Unable to cache " + key + " in " + artifactCache.getDirectory() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Open a file, returning null if it has disappeared. Cache entries can be evicted by another build at any time.
+	 */
+	protected InputStream openQuietly(File file) {
+		try {
+			return new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Request the bytes a partial download is missing. Returns null if the object has been modified since the partial download was started.
+	 */
+	protected S3Object getRemainder(DownloadJournal journal) {
+		GetObjectRequest request = new GetObjectRequest(bucketName, journal.getKey());
+		request.setRange(journal.getBytes(), journal.getLength() - 1);
+		request.setMatchingETagConstraints(Collections.singletonList(journal.getETag()));
+		try {
+			return client.getObject(request);
+		} catch (AmazonClientException e) {
+			log.debug("Unable to resume download of " + journal.getKey(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the object content into the channel from <code>offset</code> through to <code>length</code>. Large objects are split into byte ranges and fetched concurrently.
+	 */
+	protected void download(S3Object object, String key, FileChannel channel, long offset, long length, TransferProgress progress, DownloadJournal journal) throws IOException {
+		if (isRangedDownload(length - offset)) {
+			String eTag = object.getObjectMetadata().getETag();
+			RangedDownload download = new RangedDownload(client, downloadEngine, bucketName, key, eTag, length, downloadPartSize, downloadThreads);
+			download.execute(object, channel, offset, progress, journal);
+		} else {
+			downloadEngine.download(object, channel, offset, progress, journal);
 		}
 	}
 
+	/**
+	 * The partial file lives next to the destination and is named after the resource so a later build can find it again, even when Maven downloads into a temporary file
+	 */
+	protected File getPartFile(String resourceName, File destination) {
+		String name = FilenameUtils.getName(resourceName) + DownloadJournal.PART_SUFFIX;
+		return new File(destination.getAbsoluteFile().getParentFile(), name);
+	}
+
+	/**
+	 * Return true if an object of this size should be downloaded to a journaled partial file that can be resumed if the transfer fails
+	 */
+	protected boolean isResumableDownload(long length) {
+		return resumeThreshold > 0 && length >= resumeThreshold;
+	}
+
+	/**
+	 * Return true if an object of this size should be downloaded as a set of concurrently fetched byte ranges
+	 */
+	protected boolean isRangedDownload(long length) {
+		return downloadThreshold > 0 && downloadThreads > 1 && length >= downloadThreshold && length > downloadPartSize;
+	}
+
 	/**
 	 * Is the S3 object newer than the timestamp passed in?
 	 */
 	@Override
-	protected boolean isRemoteResourceNewer(final String resourceName, final long timestamp) {
-		ObjectMetadata metadata = client.getObjectMetadata(bucketName, basedir + resourceName);
-		return metadata.getLastModified().compareTo(new Date(timestamp)) < 0;
+	protected boolean isRemoteResourceNewer(final String resourceName, final long timestamp) throws ResourceDoesNotExistException {
+		Optional<ObjectMetadata> metadata = getObjectMetadata(basedir + resourceName);
+		if (!metadata.isPresent()) {
+			throw new ResourceDoesNotExistException("Resource " + resourceName + " does not exist in the repository");
+		}
+		return metadata.get().getLastModified().getTime() > timestamp;
 	}
 
 	/**
@@ -269,47 +846,71 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 		if (StringUtils.isBlank(directory)) {
 			directory = "";
 		}
-		String delimiter = "/";
 		String prefix = basedir + directory;
-		if (!prefix.endsWith(delimiter)) {
-			prefix += delimiter;
+		if (!prefix.endsWith(S3Lister.DELIMITER)) {
+			prefix += S3Lister.DELIMITER;
 		}
 		// info("prefix=" + prefix);
-		ListObjectsRequest request = new ListObjectsRequest();
-		request.setBucketName(bucketName);
-		request.setPrefix(prefix);
-		request.setDelimiter(delimiter);
-		ObjectListing objectListing = client.listObjects(request);
-		// info("truncated=" + objectListing.isTruncated());
-		// info("prefix=" + prefix);
-		// info("basedir=" + basedir);
-		List<String> fileNames = new ArrayList<String>();
-		for (S3ObjectSummary summary : objectListing.getObjectSummaries()) {
-			// info("summary.getKey()=" + summary.getKey());
-			String key = summary.getKey();
-			String relativeKey = key.startsWith(basedir) ? key.substring(basedir.length()) : key;
-			boolean add = !StringUtils.isBlank(relativeKey) && !relativeKey.equals(directory);
-			if (add) {
-				// info("Adding key - " + relativeKey);
-				fileNames.add(relativeKey);
+		final String dir = directory;
+		final List<String> fileNames = new ArrayList<String>();
+		getLister().list(prefix, S3Lister.DELIMITER, new ListingHandler() {
+			public void handleObject(S3ObjectSummary summary) {
+				String relativeKey = getRelativeKey(summary.getKey());
+				boolean add = !StringUtils.isBlank(relativeKey) && !relativeKey.equals(dir);
+				if (add) {
+					fileNames.add(relativeKey);
+				}
 			}
-		}
-		for (String commonPrefix : objectListing.getCommonPrefixes()) {
-			String value = commonPrefix.startsWith(basedir) ? commonPrefix.substring(basedir.length()) : commonPrefix;
-			// info("commonPrefix=" + commonPrefix);
-			// info("relativeValue=" + relativeValue);
-			// info("Adding common prefix - " + value);
-			fileNames.add(value);
-		}
-		// StringBuilder sb = new StringBuilder();
-		// sb.append("\n");
-		// for (String fileName : fileNames) {
-		// sb.append(fileName + "\n");
-		// }
-		// info(sb.toString());
+
+			public void handlePrefix(String commonPrefix) {
+				fileNames.add(getRelativeKey(commonPrefix));
+			}
+		});
 		return fileNames;
 	}
 
+	/**
+	 * Pass everything below <code>directory</code> to the handler. Sub-directories are listed concurrently, so the handler is called from several threads at once. Keys and
+	 * prefixes are passed exactly as S3 returns them, ie including the base directory of the repository.
+	 */
+	public void walk(String directory, ListingHandler handler) {
+		getLister().walk(getPrefix(directory), handler);
+	}
+
+	/**
+	 * Index every object below <code>directory</code> using a single flat listing, ie one request per thousand objects no matter how deep the tree is. Paths in the index are
+	 * relative to <code>directory</code>.
+	 */
+	public ObjectIndex getObjectIndex(String directory) {
+		return getIndex(getPrefix(directory));
+	}
+
+	protected ObjectIndex getIndex(String prefix) {
+		ObjectIndex index = new ObjectIndex(prefix);
+		int pages = getLister().list(prefix, null, index);
+		log.debug("Indexed " + index.size() + " objects under '" + prefix + "' from " + pages + " listings");
+		return index;
+	}
+
+	/**
+	 * Convert a directory relative to the repository into a key prefix ending with a slash. The root of a repository whose base directory is the bucket root is the empty prefix.
+	 */
+	protected String getPrefix(String directory) {
+		String prefix = basedir + StringUtils.trimToEmpty(directory);
+		if (prefix.length() > 0 && !prefix.endsWith(S3Lister.DELIMITER)) {
+			prefix += S3Lister.DELIMITER;
+		}
+		return prefix;
+	}
+
+	protected S3Lister getLister() {
+		return new S3Lister(client, bucketName, listThreads);
+	}
+
+	protected String getRelativeKey(String key) {
+		return key.startsWith(basedir) ? key.substring(basedir.length()) : key;
+	}
+
 	protected void info(String msg) {
 		System.out.println("[INFO] " + msg);
 	}
@@ -361,6 +962,18 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 		return omd;
 	}
 
+	/**
+	 * Create a request to start uploading the file in the PutContext in parts
+	 */
+	public InitiateMultipartUploadRequest getInitiateMultipartUploadRequest(PutFileContext context) {
+		String destination = context.getDestination();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentType(mimeTypes.getMimetype(destination));
+		InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucketName, getCanonicalKey(destination), metadata);
+		request.setCannedACL(acl);
+		return request;
+	}
+
 	/**
 	 * Create a PutObjectRequest based on the PutContext
 	 */
@@ -384,100 +997,359 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 	 */
 	protected PutObjectRequest getPutObjectRequest(File source, String destination, TransferProgress progress) {
 		try {
-			String key = getCanonicalKey(destination);
-			InputStream input = getInputStream(source, progress);
-			ObjectMetadata metadata = getObjectMetadata(source, destination);
-			PutObjectRequest request = new PutObjectRequest(bucketName, key, input, metadata);
-			request.setCannedAcl(acl);
-			return request;
+			// Only digest the file if the MD5 is going to be sent
+			Digests digests = isContentMd5(source.length()) ? Digests.compute(source) : null;
+			return getPutObjectRequest(source, destination, progress, digests);
 		} catch (FileNotFoundException e) {
 			throw new AmazonServiceException("File not found", e);
+		} catch (IOException e) {
+			throw new AmazonClientException("Unexpected IO error", e);
 		}
 	}
 
 	/**
-	 * On S3 there are no true "directories". An S3 bucket is essentially a Hashtable of files stored by key. The integration between a traditional file system and an S3 bucket is
-	 * to use the path of the file on the local file system as the key to the file in the bucket. The S3 bucket does not contain a separate key for the directory itself.
+	 * Create a PutObjectRequest that sends the file in the PutContext from <code>input</code>, eg a copy of the file already in memory
 	 */
-	public final void putDirectory(File sourceDir, String destinationDir) throws TransferFailedException {
-
-		// Examine the contents of the directory
-		List<PutFileContext> contexts = getPutFileContexts(sourceDir, destinationDir);
-		for (PutFileContext context : contexts) {
-			// Progress is tracked by the thread handler when uploading files this way
-			context.setProgress(null);
-		}
-
-		// Sum the total bytes in the directory
-		long bytes = sum(contexts);
-
-		// Show what we are up to
-		log.info(getUploadStartMsg(contexts.size(), bytes));
-
-		// Store some context for the thread handler
-		ThreadHandlerContext<PutFileContext> thc = new ThreadHandlerContext<PutFileContext>();
-		thc.setList(contexts);
-		thc.setHandler(new FileHandler());
-		thc.setMax(maxThreads);
-		thc.setMin(minThreads);
-		thc.setDivisor(divisor);
-		thc.setListener(new PercentCompleteListener<PutFileContext>());
-
-		// Invoke the threads
-		ExecutionStatistics stats = invoker.invokeThreads(thc);
-
-		// Show some stats
-		long millis = stats.getExecutionTime();
-		long count = stats.getIterationCount();
-		log.info(getUploadCompleteMsg(millis, bytes, count));
-	}
-
-	protected String getUploadCompleteMsg(long millis, long bytes, long count) {
-		String rate = formatter.getRate(millis, bytes);
-		String time = formatter.getTime(millis);
-		StringBuilder sb = new StringBuilder();
-		sb.append("Files: " + count);
-		sb.append("  Time: " + time);
-		sb.append("  Rate: " + rate);
-		return sb.toString();
+	public PutObjectRequest getPutObjectRequest(PutFileContext context, InputStream input, Digests digests) {
+		return getPutObjectRequest(context.getSource(), context.getDestination(), input, digests);
 	}
 
-	protected String getUploadStartMsg(int fileCount, long bytes) {
-		StringBuilder sb = new StringBuilder();
-		sb.append("Files: " + fileCount);
-		sb.append("  Bytes: " + formatter.getSize(bytes));
-		return sb.toString();
+	/**
+	 * Create a PutObjectRequest for a file whose digests are already known, or null if they aren't needed. S3 checks the body it receives against the MD5.
+	 */
+	protected PutObjectRequest getPutObjectRequest(File source, String destination, TransferProgress progress, Digests digests) throws FileNotFoundException {
+		return getPutObjectRequest(source, destination, getInputStream(source, progress), digests);
 	}
 
-	protected int getRequestsPerThread(int threads, int requests) {
-		int requestsPerThread = requests / threads;
-		while (requestsPerThread * threads < requests) {
-			requestsPerThread++;
+	protected PutObjectRequest getPutObjectRequest(File source, String destination, InputStream input, Digests digests) {
+		String key = getCanonicalKey(destination);
+		ObjectMetadata metadata = getObjectMetadata(source, destination);
+		if (digests != null && isContentMd5(source.length())) {
+			metadata.setContentMD5(digests.getContentMd5());
 		}
-		return requestsPerThread;
+		PutObjectRequest request = new PutObjectRequest(bucketName, key, input, metadata);
+		request.setCannedAcl(acl);
+		return request;
 	}
 
-	protected long sum(List<PutFileContext> contexts) {
-		long sum = 0;
-		for (PutFileContext context : contexts) {
-			File file = context.getSource();
-			long length = file.length();
-			sum += length;
-		}
-		return sum;
+	/**
+	 * Return true if a file this size is sent with its MD5 as <code>Content-MD5</code>. Anything the multipart engine uploads in parts sends the MD5 of each part instead.
+	 */
+	protected boolean isContentMd5(long length) {
+		return !multipartEngine.isMultipart(length);
 	}
 
 	/**
-	 * Store a resource into S3
+	 * On S3 there are no true "directories". An S3 bucket is essentially a Hashtable of files stored by key. The integration between a traditional file system and an S3 bucket is
+	 * to use the path of the file on the local file system as the key to the file in the bucket. The S3 bucket does not contain a separate key for the directory itself.
 	 */
-	@Override
-	protected void putResource(final File source, final String destination, final TransferProgress progress) throws IOException {
+	public final void putDirectory(File sourceDir, String destinationDir) throws TransferFailedException {
+		String root = incremental || prune ? getDestinationRoot(destinationDir) : null;
+
+		// Find out what is already in S3 before the walk starts comparing against it
+		Manifest remote = incremental ? getManifest(root) : null;
+		ObjectIndex index = incremental && remote == null ? getIndex(root) : null;
+
+		// Files are uploaded as the walk finds them, largest first out of those waiting. Parts of large files are scheduled the same way as small files.
+		UploadScheduler<UploadUnit> scheduler = startScheduler();
+		DirectoryUpload upload = new DirectoryUpload(scheduler, root, remote, index);
+		ExecutionStatistics stats;
+		FutureTask<Integer> pruning = null;
+		try {
+			boolean walked;
+			try {
+				walked = DirectoryWalker.walk(sourceDir, destinationDir, upload);
+			} finally {
+				scheduler.close();
+			}
+			log.info(getUploadStartMsg(upload.files, upload.bytes));
+
+			// Remove files that are no longer part of the deploy while the last uploads finish. A walk that stopped early has not seen every path, so nothing is pruned then.
+			pruning = prune && walked && !scheduler.isFailed() ? startPruning(root, upload.paths) : null;
+			stats = scheduler.await();
+		} catch (RuntimeException e) {
+			if (pruning != null) {
+				pruning.cancel(true);
+			}
+			// Let the uploads in flight finish before aborting the multipart uploads they belong to
+			scheduler.cancel();
+			int aborted = upload.tracker.abortIncomplete();
+			if (aborted > 0) {
+				log.info("Aborted " + aborted + " unfinished multipart uploads");
+			}
+			throw e;
+		} finally {
+			invalidate(upload.keys);
+		}
+		if (pruning != null) {
+			awaitPruning(pruning);
+		}
+
+		// Only replace the manifest once everything it lists has been uploaded
+		putManifest(root, upload.manifest);
+
+		// Show some stats
+		String msg = getUploadCompleteMsg(stats.getExecutionTime(), upload.bytes, upload.files, upload.skippedFiles, upload.skippedBytes);
+		ConcurrencyController controller = scheduler.getController();
+		log.info(controller == null ? msg : msg + "  " + controller.getSummary());
+	}
+
+	/**
+	 * Start a scheduler for uploads. It runs on virtual threads if they were asked for and this runtime has them. The number of uploads in flight is then limited by the size of
+	 * the HTTP connection pool rather than by the number of threads. Otherwise it runs on platform threads, which are added as files are found (see
+	 * {@link #getThreadCount(int)}). In adaptive mode a congestion controller starts at <code>minThreads</code> and finds the concurrency S3 is willing to sustain, up to the
+	 * number of threads (or connections).
+	 */
+	protected UploadScheduler<UploadUnit> startScheduler() {
+		ThreadFactory factory = virtualThreads ? VirtualThreads.getFactory("S3-Upload-Virtual-") : null;
+		if (virtualThreads && factory == null) {
+			log.info("Virtual threads are not available on Java " + System.getProperty("java.version") + ", using platform threads");
+		}
+
+		int connections = getMaxConnections(getRepository());
+		ConcurrencyController controller = adaptive ? new ConcurrencyController(minThreads, factory != null ? connections : maxThreads) : null;
+		ProgressListener<UploadUnit> listener;
+		if (controller == null) {
+			listener = new PercentCompleteListener<UploadUnit>();
+		} else {
+			listener = new ConcurrencyProgressListener<UploadUnit>(controller);
+		}
+		UploadUnitHandler handler = new UploadUnitHandler();
+		UploadScheduler<UploadUnit> scheduler = new UploadScheduler<UploadUnit>(handler, listener, new LargestFirstComparator());
+		handler.setScheduler(scheduler);
+		scheduler.setController(controller);
+
+		if (factory != null) {
+			log.debug("Uploading on virtual threads, at most " + connections + " at a time");
+			scheduler.start(connections, factory);
+		} else {
+			scheduler.start(0);
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Return how many platform threads to make <code>elements</code> upload requests with
+	 */
+	protected int getThreadCount(int elements) {
+		if (adaptive) {
+			return Math.min(maxThreads, elements);
+		} else {
+			return UploadScheduler.getThreadCount(minThreads, maxThreads, divisor, elements);
+		}
+	}
+
+	/**
+	 * Start deleting the objects below <code>root</code> that aren't part of this deploy on a separate thread
+	 */
+	protected FutureTask<Integer> startPruning(String root, Set<String> keep) {
+		FutureTask<Integer> task = new FutureTask<Integer>(new Pruner(client, bucketName, root, keep, pruneDryRun));
+		Thread thread = new Thread(task, "S3-Prune");
+		thread.setDaemon(true);
+		thread.start();
+		return task;
+	}
+
+	protected void awaitPruning(FutureTask<Integer> pruning) throws TransferFailedException {
+		try {
+			pruning.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransferFailedException("Interrupted while pruning", e);
+		} catch (ExecutionException e) {
+			throw new TransferFailedException("Unable to prune orphaned files", e.getCause());
+		}
+	}
+
+	protected boolean isUnchanged(Manifest.Entry local, ObjectIndex.Entry remote) {
+		if (remote == null || remote.getSize() != local.getSize()) {
+			return false;
+		}
+		String eTag = StringUtils.remove(remote.getETag(), '"');
+		return eTag != null && eTag.indexOf('-') == -1 && eTag.equalsIgnoreCase(local.getMd5());
+	}
+
+	/**
+	 * Return the key prefix of the root of a <code>putDirectory</code> destination. The manifest lives there, and pruning looks for orphans below it.
+	 */
+	protected String getDestinationRoot(String destinationDir) {
+		String key = getCanonicalKey(destinationDir + "/" + Manifest.NAME);
+		return key.substring(0, key.length() - Manifest.NAME.length());
+	}
+
+	protected String getPath(String root, PutFileContext context) {
+		return getCanonicalKey(context.getDestination()).substring(root.length());
+	}
+
+	/**
+	 * Fetch the manifest written by the last deploy to this destination. Returns null if there isn't one or it can't be read.
+	 */
+	protected Manifest getManifest(String root) {
+		String key = root + Manifest.NAME;
+		if (isKnownAbsent(key)) {
+			return null;
+		}
+		S3Object object;
+		try {
+			object = client.getObject(bucketName, key);
+		} catch (AmazonClientException e) {
+			log.debug("No manifest at " + key);
+			return null;
+		}
+		InputStream in = object.getObjectContent();
+		try {
+			Manifest manifest = Manifest.read(in);
+			log.debug("Comparing against the " + manifest.size() + " files listed in " + key);
+			return manifest;
+		} catch (IOException e) {
+			log.warn("Ignoring unreadable manifest " + key + ": " + e.getMessage());
+			return null;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Replace the manifest at the root of the destination. A single PUT replaces the object atomically, so readers see either the old manifest or the new one.
+	 */
+	protected void putManifest(String root, Manifest manifest) {
+		if (manifest == null) {
+			return;
+		}
+		String key = root + Manifest.NAME;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			manifest.write(out);
+		} catch (IOException e) {
+			throw new AmazonClientException("Unexpected IO error", e);
+		}
+		byte[] bytes = out.toByteArray();
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(bytes.length);
+		metadata.setContentType("application/octet-stream");
+		PutObjectRequest request = new PutObjectRequest(bucketName, key, new ByteArrayInputStream(bytes), metadata);
+		request.setCannedAcl(acl);
+		try {
+			client.putObject(request);
+		} finally {
+			invalidate(key);
+		}
+	}
+
+	/**
+	 * Drop cached metadata for everything we attempted to upload
+	 */
+	protected void invalidate(List<String> keys) {
+		for (String key : keys) {
+			invalidate(key);
+		}
+	}
+
+	/**
+	 * Forget anything cached about a key we have uploaded
+	 */
+	protected void invalidate(String key) {
+		metadataCache.invalidate(bucketName, key);
+		if (negativeCache != null) {
+			negativeCache.clear(bucketName, key);
+		}
+	}
+
+	protected String getUploadCompleteMsg(long millis, long bytes, long count, long skippedFiles, long skippedBytes) {
+		String msg = getUploadCompleteMsg(millis, bytes, count);
+		if (skippedFiles == 0) {
+			return msg;
+		}
+		return msg + "  Skipped: " + skippedFiles + " unchanged files (" + formatter.getSize(skippedBytes) + ")";
+	}
+
+	protected String getUploadCompleteMsg(long millis, long bytes, long count) {
+		String rate = formatter.getRate(millis, bytes);
+		String time = formatter.getTime(millis);
+		StringBuilder sb = new StringBuilder();
+		sb.append("Files: " + count);
+		sb.append("  Time: " + time);
+		sb.append("  Rate: " + rate);
+		return sb.toString();
+	}
+
+	protected String getUploadStartMsg(int fileCount, long bytes) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Files: " + fileCount);
+		sb.append("  Bytes: " + formatter.getSize(bytes));
+		return sb.toString();
+	}
+
+	/**
+	 * Store a resource into S3
+	 */
+	@Override
+	protected void putResource(final File source, final String destination, final TransferProgress progress) throws IOException {
+
+		// Large files are uploaded in parts, several at a time
+		if (multipartEngine.isMultipart(source.length())) {
+			PutFileContext context = getPutFileContext(source, destination);
+			context.setProgress(progress);
+			String key = getCanonicalKey(destination);
+			Digests digests;
+			try {
+				digests = multipartEngine.upload(context);
+			} finally {
+				invalidate(key);
+			}
+			digestRegistry.put(key, digests);
+			return;
+		}
+
+		// Checksum files Maven uploads after an artifact have to describe what was actually uploaded
+		verifyChecksum(source, destination);
+
+		// Small files are sent straight from memory
+		if (smallObjectUploader.isSmall(source.length())) {
+			PutFileContext context = getPutFileContext(source, destination);
+			context.setProgress(progress);
+			String key = getCanonicalKey(destination);
+			Digests digests;
+			try {
+				digests = smallObjectUploader.upload(context);
+			} finally {
+				invalidate(key);
+			}
+			digestRegistry.put(key, digests);
+			return;
+		}
+
+		// Digest the file in one pass, S3 rejects the upload if the body it receives doesn't match the MD5
+		Digests digests = Digests.compute(source);
 
 		// Create a new PutObjectRequest
-		PutObjectRequest request = getPutObjectRequest(source, destination, progress);
+		PutObjectRequest request = getPutObjectRequest(source, destination, progress, digests);
 
-		// Upload the file to S3, using multi-part upload for large files
-		S3Utils.getInstance().upload(source, request, client, transferManager);
+		// Upload the file to S3 with a single PUT, anything that needs to go in parts was handled above
+		try {
+			client.putObject(request);
+		} finally {
+			invalidate(request.getKey());
+		}
+		digestRegistry.put(request.getKey(), digests);
+	}
+
+	/**
+	 * If <code>source</code> is the checksum file of something uploaded earlier in this session, make sure it holds the checksum of what was uploaded
+	 */
+	protected void verifyChecksum(File source, String destination) throws IOException {
+		if (source.length() > MAX_CHECKSUM_FILE_SIZE) {
+			return;
+		}
+		String expected = digestRegistry.getExpected(getCanonicalKey(destination));
+		if (expected == null) {
+			return;
+		}
+		String actual = DigestRegistry.parse(FileUtils.readFileToString(source, "UTF-8"));
+		if (!expected.equalsIgnoreCase(actual)) {
+			throw new IOException("The checksum in " + destination + " is " + actual + " but the content uploaded earlier has " + expected);
+		}
+		log.debug("Verified " + destination + " against the uploaded content");
 	}
 
 	protected String getDestinationPath(final String destination) {
@@ -546,6 +1418,24 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 		}
 	}
 
+	protected long getValue(String key, long defaultValue) {
+		String value = System.getProperty(key);
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		} else {
+			return Long.parseLong(value);
+		}
+	}
+
+	protected boolean getValue(String key, boolean defaultValue) {
+		String value = System.getProperty(key);
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		} else {
+			return Boolean.valueOf(value);
+		}
+	}
+
 	protected String getValue(String key, String defaultValue) {
 		String value = System.getProperty(key);
 		if (StringUtils.isEmpty(value)) {
@@ -563,4 +1453,357 @@ public class S3Wagon extends AbstractWagon implements RequestFactory {
 		this.readTimeout = readTimeout;
 	}
 
+	public long getDownloadThreshold() {
+		return downloadThreshold;
+	}
+
+	public void setDownloadThreshold(long downloadThreshold) {
+		this.downloadThreshold = downloadThreshold;
+	}
+
+	public long getDownloadPartSize() {
+		return downloadPartSize;
+	}
+
+	public void setDownloadPartSize(long downloadPartSize) {
+		this.downloadPartSize = downloadPartSize;
+	}
+
+	public int getDownloadThreads() {
+		return downloadThreads;
+	}
+
+	public void setDownloadThreads(int downloadThreads) {
+		this.downloadThreads = downloadThreads;
+	}
+
+	public int getDownloadBufferSize() {
+		return downloadBufferSize;
+	}
+
+	public void setDownloadBufferSize(int downloadBufferSize) {
+		this.downloadBufferSize = downloadBufferSize;
+	}
+
+	public boolean isDirectBuffers() {
+		return directBuffers;
+	}
+
+	public void setDirectBuffers(boolean directBuffers) {
+		this.directBuffers = directBuffers;
+	}
+
+	public long getResumeThreshold() {
+		return resumeThreshold;
+	}
+
+	public void setResumeThreshold(long resumeThreshold) {
+		this.resumeThreshold = resumeThreshold;
+	}
+
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public long getCacheMaxSize() {
+		return cacheMaxSize;
+	}
+
+	public void setCacheMaxSize(long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	public long getMetadataCacheTtl() {
+		return metadataCacheTtl;
+	}
+
+	public void setMetadataCacheTtl(long metadataCacheTtl) {
+		this.metadataCacheTtl = metadataCacheTtl;
+	}
+
+	public long getMetadataCacheSize() {
+		return metadataCacheSize;
+	}
+
+	public void setMetadataCacheSize(long metadataCacheSize) {
+		this.metadataCacheSize = metadataCacheSize;
+	}
+
+	public String getNegativeCacheDirectory() {
+		return negativeCacheDirectory;
+	}
+
+	public void setNegativeCacheDirectory(String negativeCacheDirectory) {
+		this.negativeCacheDirectory = negativeCacheDirectory;
+	}
+
+	public String getNegativeCachePolicy() {
+		return negativeCachePolicy;
+	}
+
+	public void setNegativeCachePolicy(String negativeCachePolicy) {
+		this.negativeCachePolicy = negativeCachePolicy;
+	}
+
+	public int getListThreads() {
+		return listThreads;
+	}
+
+	public void setListThreads(int listThreads) {
+		this.listThreads = listThreads;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isPrune() {
+		return prune;
+	}
+
+	public void setPrune(boolean prune) {
+		this.prune = prune;
+	}
+
+	public boolean isPruneDryRun() {
+		return pruneDryRun;
+	}
+
+	public void setPruneDryRun(boolean pruneDryRun) {
+		this.pruneDryRun = pruneDryRun;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public void setSendBufferSize(int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public void setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	public boolean isTcpKeepAlive() {
+		return tcpKeepAlive;
+	}
+
+	public void setTcpKeepAlive(boolean tcpKeepAlive) {
+		this.tcpKeepAlive = tcpKeepAlive;
+	}
+
+	public long getConnectionTtl() {
+		return connectionTtl;
+	}
+
+	public void setConnectionTtl(long connectionTtl) {
+		this.connectionTtl = connectionTtl;
+	}
+
+	public long getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(long maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public int getWarmConnections() {
+		return warmConnections;
+	}
+
+	public void setWarmConnections(int warmConnections) {
+		this.warmConnections = warmConnections;
+	}
+
+	public String getBucketCacheFile() {
+		return bucketCacheFile;
+	}
+
+	public void setBucketCacheFile(String bucketCacheFile) {
+		this.bucketCacheFile = bucketCacheFile;
+	}
+
+	public long getBucketCacheTtl() {
+		return bucketCacheTtl;
+	}
+
+	public void setBucketCacheTtl(long bucketCacheTtl) {
+		this.bucketCacheTtl = bucketCacheTtl;
+	}
+
+	public long getMultipartThreshold() {
+		return multipartThreshold;
+	}
+
+	public void setMultipartThreshold(long multipartThreshold) {
+		this.multipartThreshold = multipartThreshold;
+	}
+
+	public long getMultipartPartSize() {
+		return multipartPartSize;
+	}
+
+	public void setMultipartPartSize(long multipartPartSize) {
+		this.multipartPartSize = multipartPartSize;
+	}
+
+	public int getMultipartThreads() {
+		return multipartThreads;
+	}
+
+	public void setMultipartThreads(int multipartThreads) {
+		this.multipartThreads = multipartThreads;
+	}
+
+	public int getSmallObjectThreshold() {
+		return smallObjectThreshold;
+	}
+
+	public void setSmallObjectThreshold(int smallObjectThreshold) {
+		this.smallObjectThreshold = smallObjectThreshold;
+	}
+
+	public boolean isUploadResume() {
+		return uploadResume;
+	}
+
+	public void setUploadResume(boolean uploadResume) {
+		this.uploadResume = uploadResume;
+	}
+
+	public String getUploadJournalDir() {
+		return uploadJournalDir;
+	}
+
+	public void setUploadJournalDir(String uploadJournalDir) {
+		this.uploadJournalDir = uploadJournalDir;
+	}
+
+	public long getUploadStaleAfter() {
+		return uploadStaleAfter;
+	}
+
+	public void setUploadStaleAfter(long uploadStaleAfter) {
+		this.uploadStaleAfter = uploadStaleAfter;
+	}
+
+	public long getClientIdleTimeout() {
+		return clientIdleTimeout;
+	}
+
+	public void setClientIdleTimeout(long clientIdleTimeout) {
+		this.clientIdleTimeout = clientIdleTimeout;
+	}
+
+	/**
+	 * Hit and miss counts for the metadata cache shared by this JVM, or null if the wagon has not connected yet
+	 */
+	public CacheStats getMetadataCacheStats() {
+		return metadataCache == null ? null : metadataCache.getStats();
+	}
+
+	/**
+	 * Decides what to do with each file the walk finds. Files that need uploading are handed to the scheduler straight away and the totals are kept up to date as the walk
+	 * goes. In incremental mode every file is digested for the new manifest and compared against what is already in S3. When pruning, the path of every file is remembered
+	 * so the pruner knows what to keep.
+	 */
+	protected class DirectoryUpload implements DirectoryWalker.Visitor {
+		UploadScheduler<UploadUnit> scheduler;
+		MultipartTracker tracker = new MultipartTracker();
+		String root;
+		Manifest remote;
+		ObjectIndex index;
+		Manifest manifest;
+		Set<String> paths;
+		List<String> keys = new ArrayList<String>();
+		int files;
+		long requests;
+		long bytes;
+		long skippedFiles;
+		long skippedBytes;
+
+		protected DirectoryUpload(UploadScheduler<UploadUnit> scheduler, String root, Manifest remote, ObjectIndex index) {
+			this.scheduler = scheduler;
+			this.root = root;
+			this.remote = remote;
+			this.index = index;
+			this.manifest = incremental ? new Manifest() : null;
+			this.paths = prune ? new HashSet<String>() : null;
+		}
+
+		public boolean visit(File file, String destination) {
+			PutFileContext context = getPutFileContext(file, destination);
+			// Progress is tracked by the scheduler when uploading files this way
+			context.setProgress(null);
+			String path = root == null ? null : getPath(root, context);
+			if (paths != null) {
+				paths.add(path);
+			}
+			if (manifest != null && isUnchanged(path, file)) {
+				skippedFiles++;
+				skippedBytes += context.getLength();
+				return true;
+			}
+			keys.add(getCanonicalKey(destination));
+			files++;
+			bytes += context.getLength();
+			requests += multipartEngine.getRequestCount(context.getLength());
+			scheduler.put(new FileUpload(context, multipartEngine, smallObjectUploader, tracker));
+			scheduler.grow(getThreadCount((int) Math.min(requests, Integer.MAX_VALUE)));
+			return !scheduler.isFailed();
+		}
+
+		/**
+		 * Record the size and MD5 of the file in the new manifest, then check whether S3 already has it. If the destination has a manifest from an earlier deploy the file is
+		 * compared against that, otherwise against the listing of the destination.
+		 */
+		protected boolean isUnchanged(String path, File file) {
+			try {
+				manifest.put(path, file.length(), Files.hash(file, Hashing.md5()).toString());
+			} catch (IOException e) {
+				throw new AmazonClientException("Unexpected IO error", e);
+			}
+			Manifest.Entry entry = manifest.get(path);
+			return remote != null ? remote.matches(path, entry) : S3Wagon.this.isUnchanged(entry, index.get(path));
+		}
+	}
+
 }
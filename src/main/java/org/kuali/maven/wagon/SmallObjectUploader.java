@@ -0,0 +1,99 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+
+/**
+ * <p>
+ * Uploads files smaller than a threshold with as little overhead as possible. The whole file is read into a pooled buffer with a single read, digested straight out of the
+ * buffer, and sent from memory with one PUT. There is no file stream to open for the request, the SDK doesn't digest the body again, and the transfer listeners get a single
+ * progress event instead of one per read.
+ * </p>
+ *
+ * <p>
+ * The buffers are as big as the threshold, so this only pays off for small files. Larger files go through the regular path.
+ * </p>
+ */
+public class SmallObjectUploader {
+
+	BufferPool pool;
+
+	public SmallObjectUploader(int threshold) {
+		this.pool = new BufferPool(Math.max(threshold, 0), false);
+	}
+
+	/**
+	 * Return true if a file of this size takes the small object path
+	 */
+	public boolean isSmall(long length) {
+		return length < pool.getBufferSize();
+	}
+
+	/**
+	 * Upload the file in <code>context</code> with a single PUT and return its digests
+	 */
+	public Digests upload(PutFileContext context) {
+		ByteBuffer buffer = pool.acquire();
+		try {
+			byte[] bytes = buffer.array();
+			int length = read(context.getSource(), bytes);
+			Digests digests = Digests.compute(bytes, 0, length);
+			PutObjectRequest request = context.getFactory().getPutObjectRequest(context, new ByteArrayInputStream(bytes, 0, length), digests);
+			context.getClient().putObject(request);
+			if (context.getProgress() != null && length > 0) {
+				context.getProgress().notify(bytes, length);
+			}
+			return digests;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Read the whole file into <code>bytes</code> and return its length
+	 */
+	protected int read(File source, byte[] bytes) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(source, "r");
+			long length = file.length();
+			if (length >= bytes.length) {
+				throw new AmazonClientException(source + " is too big for the small object path");
+			}
+			file.readFully(bytes, 0, (int) length);
+			return (int) length;
+		} catch (IOException e) {
+			throw new AmazonClientException("Unexpected IO error", e);
+		} finally {
+			IOUtils.closeQuietly(file);
+		}
+	}
+
+	public int getThreshold() {
+		return pool.getBufferSize();
+	}
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.ClientConfiguration;
+
+/**
+ * <p>
+ * The socket and HTTP settings for the connections a wagon opens to S3: size of the connection pool, connect and read timeouts, socket buffer sizes, TCP keep-alive, how long
+ * a pooled connection may live and how long it may sit idle before it is evicted.
+ * </p>
+ *
+ * <p>
+ * Keep-alive, connection time to live and idle eviction are only available in newer versions of the AWS SDK. They are applied if the SDK on the classpath supports them and
+ * ignored otherwise.
+ * </p>
+ */
+public class TransportProfile {
+
+	private static final Logger log = LoggerFactory.getLogger(TransportProfile.class);
+
+	int maxConnections = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+	int connectTimeout;
+	int readTimeout = ClientConfiguration.DEFAULT_SOCKET_TIMEOUT;
+	int sendBufferSize;
+	int receiveBufferSize;
+	boolean tcpKeepAlive;
+	long connectionTtl = -1;
+	long maxIdle;
+
+	/**
+	 * Copy these settings onto the configuration a client is created with. Zero sizes and timeouts leave the SDK defaults in place.
+	 */
+	public void apply(ClientConfiguration configuration) {
+		configuration.setMaxConnections(maxConnections);
+		if (connectTimeout > 0) {
+			configuration.setConnectionTimeout(connectTimeout);
+		}
+		if (readTimeout > 0) {
+			configuration.setSocketTimeout(readTimeout);
+		}
+		if (sendBufferSize > 0 || receiveBufferSize > 0) {
+			configuration.setSocketBufferSizeHints(sendBufferSize, receiveBufferSize);
+		}
+		set(configuration, "setUseTcpKeepAlive", boolean.class, tcpKeepAlive);
+		if (connectionTtl > 0) {
+			set(configuration, "setConnectionTTL", long.class, connectionTtl);
+		}
+		if (maxIdle > 0) {
+			set(configuration, "setConnectionMaxIdleMillis", long.class, maxIdle);
+			set(configuration, "setUseReaper", boolean.class, true);
+		}
+	}
+
+	/**
+	 * Call a setter that only newer versions of the SDK have. Returns false if this version doesn't have it.
+	 */
+	protected static boolean set(ClientConfiguration configuration, String name, Class<?> type, Object value) {
+		Method method;
+		try {
+			method = configuration.getClass().getMethod(name, type);
+		} catch (NoSuchMethodException e) {
+			log.debug("This version of the AWS SDK does not support " + name);
+			return false;
+		}
+		try {
+			method.invoke(configuration, value);
+			return true;
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to call " + name, e);
+		}
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public void setSendBufferSize(int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public void setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	public boolean isTcpKeepAlive() {
+		return tcpKeepAlive;
+	}
+
+	public void setTcpKeepAlive(boolean tcpKeepAlive) {
+		this.tcpKeepAlive = tcpKeepAlive;
+	}
+
+	public long getConnectionTtl() {
+		return connectionTtl;
+	}
+
+	public void setConnectionTtl(long connectionTtl) {
+		this.connectionTtl = connectionTtl;
+	}
+
+	public long getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(long maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Records a multipart upload in progress so an interrupted upload can be resumed by a later build instead of starting over. It holds the upload ID, which file is being
+ * uploaded along with its size, modification time and the MD5 of its first part, the part size, and the ETag of every part S3 has acknowledged. Journals live in a directory
+ * shared by every build on the host, one file per bucket and key.
+ * <p>
+ * The MD5 of the first part is only a cheap way to turn away a file that was rebuilt with the same size and timestamp before S3 is asked about the upload. It says nothing
+ * about the rest of the file, so a part recorded here is only reused once its MD5 has been checked against the file as well, see {@link #isUnchanged(File, int, String)}.
+ * </p>
+ */
+public class UploadJournal {
+
+	private static final Logger log = LoggerFactory.getLogger(UploadJournal.class);
+
+	public static final String SUFFIX = ".upload";
+
+	private static final String BUCKET = "bucket";
+	private static final String KEY = "key";
+	private static final String UPLOAD_ID = "uploadId";
+	private static final String SOURCE = "source";
+	private static final String LENGTH = "length";
+	private static final String LAST_MODIFIED = "lastModified";
+	private static final String PART_SIZE = "partSize";
+	private static final String STARTED = "started";
+	private static final String FINGERPRINT = "fingerprint";
+	private static final String PART = "part.";
+
+	File file;
+	String bucketName;
+	String key;
+	String uploadId;
+	String source;
+	long length;
+	long lastModified;
+	long partSize;
+	long started;
+	String fingerprint;
+	Map<Integer, String> parts = new TreeMap<Integer, String>();
+
+	public UploadJournal(File file, String bucketName, String key, String uploadId, File source, long partSize) {
+		this.file = file;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.uploadId = uploadId;
+		this.source = source.getAbsolutePath();
+		this.length = source.length();
+		this.lastModified = source.lastModified();
+		this.partSize = partSize;
+		this.started = System.currentTimeMillis();
+		this.fingerprint = getFingerprint(source, partSize);
+	}
+
+	protected UploadJournal(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Return the journal file for bucket/key in <code>directory</code>
+	 */
+	public static File getFile(File directory, String bucketName, String key) {
+		return new File(directory, Hashing.sha1().hashString(bucketName + "/" + key, Charsets.UTF_8).toString() + SUFFIX);
+	}
+
+	/**
+	 * Load a journal. Returns null if there is no journal or it can't be read.
+	 */
+	public static UploadJournal load(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			Properties properties = new Properties();
+			properties.load(in);
+			UploadJournal journal = new UploadJournal(file);
+			journal.bucketName = properties.getProperty(BUCKET);
+			journal.key = properties.getProperty(KEY);
+			journal.uploadId = properties.getProperty(UPLOAD_ID);
+			journal.source = properties.getProperty(SOURCE);
+			journal.length = Long.parseLong(properties.getProperty(LENGTH));
+			journal.lastModified = Long.parseLong(properties.getProperty(LAST_MODIFIED));
+			journal.partSize = Long.parseLong(properties.getProperty(PART_SIZE));
+			journal.started = Long.parseLong(properties.getProperty(STARTED));
+			journal.fingerprint = properties.getProperty(FINGERPRINT);
+			for (Object property : properties.keySet()) {
+				String name = (String) property;
+				if (name.startsWith(PART)) {
+					journal.parts.put(Integer.parseInt(name.substring(PART.length())), properties.getProperty(name));
+				}
+			}
+			if (StringUtils.isBlank(journal.bucketName) || StringUtils.isBlank(journal.key) || StringUtils.isBlank(journal.uploadId)) {
+				return null;
+			}
+			return journal;
+		} catch (Exception e) {
+			log.debug("Ignoring unreadable upload journal " + file, e);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Return every journal in <code>directory</code> that can be read
+	 */
+	public static List<UploadJournal> list(File directory) {
+		return list(directory, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Return every journal in <code>directory</code> that can be read and was last written before <code>modifiedBefore</code>. Journals written since are not read at all.
+	 */
+	public static List<UploadJournal> list(File directory, long modifiedBefore) {
+		List<UploadJournal> journals = new ArrayList<UploadJournal>();
+		File[] files = directory.listFiles(new SuffixFilter());
+		if (files == null) {
+			return journals;
+		}
+		for (File file : files) {
+			if (file.lastModified() >= modifiedBefore) {
+				continue;
+			}
+			UploadJournal journal = load(file);
+			if (journal != null) {
+				journals.add(journal);
+			}
+		}
+		return journals;
+	}
+
+	/**
+	 * Return true if this journal is for the same file, unchanged since the upload started, cut into parts of the same size
+	 */
+	public boolean matches(File source, long partSize) {
+		if (!source.getAbsolutePath().equals(this.source) || source.length() != length || source.lastModified() != lastModified || partSize != this.partSize) {
+			return false;
+		}
+		// Only read the file once everything cheaper matches
+		return fingerprint != null && fingerprint.equals(getFingerprint(source, partSize));
+	}
+
+	/**
+	 * Return the MD5 of the first part of the file, or null if the file can't be read
+	 */
+	protected static String getFingerprint(File source, long partSize) {
+		return getMd5(source, 0, partSize);
+	}
+
+	/**
+	 * Return true if part <code>number</code> of the file still has the MD5 S3 reported for it as its ETag
+	 */
+	public boolean isUnchanged(File source, int number, String eTag) {
+		String md5 = getMd5(source, (number - 1) * partSize, partSize);
+		return md5 != null && md5.equalsIgnoreCase(StringUtils.remove(eTag, '"'));
+	}
+
+	/**
+	 * Return the MD5 of a slice of the file, or null if the file can't be read
+	 */
+	protected static String getMd5(File source, long offset, long length) {
+		try {
+			return Files.asByteSource(source).slice(offset, length).hash(Hashing.md5()).toString();
+		} catch (IOException e) {
+			log.debug("Unable to read " + source, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Record a part S3 has acknowledged and save the journal
+	 */
+	public synchronized void put(int number, String eTag) {
+		parts.put(number, eTag);
+		save();
+	}
+
+	/**
+	 * Write the journal to disk. The new content is written to a temporary file first and then renamed over the old journal.
+	 */
+	public synchronized void save() {
+		Properties properties = new Properties();
+		properties.setProperty(BUCKET, bucketName);
+		properties.setProperty(KEY, key);
+		properties.setProperty(UPLOAD_ID, uploadId);
+		properties.setProperty(SOURCE, source);
+		properties.setProperty(LENGTH, Long.toString(length));
+		properties.setProperty(LAST_MODIFIED, Long.toString(lastModified));
+		properties.setProperty(PART_SIZE, Long.toString(partSize));
+		properties.setProperty(STARTED, Long.toString(started));
+		if (fingerprint != null) {
+			properties.setProperty(FINGERPRINT, fingerprint);
+		}
+		for (Map.Entry<Integer, String> part : parts.entrySet()) {
+			properties.setProperty(PART + part.getKey(), part.getValue());
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			file.getParentFile().mkdirs();
+			out = new FileOutputStream(temp);
+			properties.store(out, null);
+			out.close();
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("Unable to rename " + temp + " to " + file);
+			}
+		} catch (IOException e) {
+			// Losing the journal only means the next attempt starts over
+			log.debug("Unable to save upload journal " + file, e);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	public void delete() {
+		file.delete();
+	}
+
+	public synchronized Map<Integer, String> getParts() {
+		return new TreeMap<Integer, String>(parts);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getBucketName() {
+		return bucketName;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getUploadId() {
+		return uploadId;
+	}
+
+	public long getPartSize() {
+		return partSize;
+	}
+
+	public long getStarted() {
+		return started;
+	}
+
+	protected static class SuffixFilter implements FileFilter {
+		public boolean accept(File file) {
+			return file.isFile() && file.getName().endsWith(SUFFIX);
+		}
+	}
+
+}
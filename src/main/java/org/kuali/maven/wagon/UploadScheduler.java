@@ -0,0 +1,442 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kuali.common.threads.ElementHandler;
+import org.kuali.common.threads.ExecutionStatistics;
+import org.kuali.common.threads.ListIteratorContext;
+import org.kuali.common.threads.ThreadHandlerException;
+import org.kuali.common.threads.listener.ProgressEvent;
+import org.kuali.common.threads.listener.ProgressListener;
+
+/**
+ * <p>
+ * Runs an {@link ElementHandler} over a set of elements using a fixed number of worker threads that all pull from one shared queue. The queue is ordered by a comparator, eg
+ * largest file first, so the slowest work starts first and a worker that finishes early picks up whatever is left instead of sitting idle.
+ * </p>
+ *
+ * <p>
+ * Elements can be submitted while the workers are running, including by the handler itself. Once {@link #close()} has been called and every submitted element has been
+ * handled the workers stop. If the handler throws, no new elements are started and {@link #await()} rethrows the failure.
+ * </p>
+ *
+ * <p>
+ * A producer that finds elements faster than they can be handled uses {@link #put(Object)}, which blocks while the queue is full, and {@link #grow(int)} to add workers as
+ * the number of elements becomes known.
+ * </p>
+ *
+ * <p>
+ * Instead of a fixed set of workers, {@link #start(int, ThreadFactory)} uses one dispatcher that starts a new thread for every element, with a semaphore limiting how many run
+ * at once. This is meant for virtual threads, which are cheap enough to create per element.
+ * </p>
+ */
+public class UploadScheduler<T> {
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+	private static final long POLL_INTERVAL = 100;
+	/**
+	 * How many times an element that ran into congestion is retried before its failure is passed on
+	 */
+	public static final int MAX_ATTEMPTS = 10;
+	/**
+	 * How many elements added with {@link #put(Object)} can be waiting or in progress at once
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	ElementHandler<T> handler;
+	ConcurrencyController controller;
+	Semaphore permits;
+	int concurrency;
+	ProgressListener<T> listener;
+	PriorityBlockingQueue<Task<T>> queue;
+	Semaphore slots = new Semaphore(DEFAULT_CAPACITY);
+	AtomicInteger outstanding = new AtomicInteger();
+	List<Thread> workers = new ArrayList<Thread>();
+	volatile boolean closed;
+	volatile boolean cancelled;
+	volatile Throwable failure;
+	int submitted;
+	int completed;
+	long started;
+
+	public UploadScheduler(ElementHandler<T> handler, ProgressListener<T> listener, Comparator<? super T> priority) {
+		this.handler = handler;
+		this.listener = listener;
+		this.queue = new PriorityBlockingQueue<Task<T>>(11, new TaskComparator<T>(priority));
+	}
+
+	/**
+	 * Work out how many threads to use the same way kuali-threads does. One thread per <code>divisor</code> elements, kept between <code>min</code> and <code>max</code> and
+	 * never more than the number of elements.
+	 */
+	public static int getThreadCount(int min, int max, int divisor, int elements) {
+		min = Math.min(min, max);
+		max = Math.min(max, elements);
+		min = Math.min(min, elements);
+		int threads = divisor > 0 ? elements / divisor : max;
+		return Math.max(Math.max(Math.min(threads, max), min), 1);
+	}
+
+	/**
+	 * Handle every element in the list using <code>threads</code> workers and wait for them to finish
+	 */
+	public ExecutionStatistics execute(List<T> elements, int threads) {
+		start(threads);
+		for (T element : elements) {
+			submit(element);
+		}
+		close();
+		return await();
+	}
+
+	/**
+	 * Let the controller decide how many elements are handled at once, up to the number of workers. Must be set before the scheduler is started.
+	 */
+	public void setController(ConcurrencyController controller) {
+		this.controller = controller;
+	}
+
+	public ConcurrencyController getController() {
+		return controller;
+	}
+
+	/**
+	 * Limit how many elements added with {@link #put(Object)} can be waiting or in progress at once. Must be set before anything is added.
+	 */
+	public void setCapacity(int capacity) {
+		this.slots = new Semaphore(capacity);
+	}
+
+	/**
+	 * Start the workers. They wait for elements to be submitted.
+	 */
+	public synchronized void start(int threads) {
+		started = System.currentTimeMillis();
+		grow(threads);
+	}
+
+	/**
+	 * Start more workers until there are <code>threads</code> of them. Does nothing when running on a dispatcher.
+	 */
+	public synchronized void grow(int threads) {
+		if (permits != null) {
+			return;
+		}
+		while (workers.size() < threads) {
+			Thread thread = new Thread(new Worker(workers.size()), "S3-Upload-" + THREAD_COUNTER.incrementAndGet());
+			thread.setDaemon(true);
+			workers.add(thread);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Start a dispatcher that runs each element on its own thread from <code>factory</code>, with at most <code>concurrency</code> elements being handled at once
+	 */
+	public synchronized void start(int concurrency, ThreadFactory factory) {
+		started = System.currentTimeMillis();
+		this.concurrency = concurrency;
+		this.permits = new Semaphore(concurrency);
+		Thread thread = new Thread(new Dispatcher(factory), "S3-Upload-Dispatcher-" + THREAD_COUNTER.incrementAndGet());
+		thread.setDaemon(true);
+		workers.add(thread);
+		thread.start();
+	}
+
+	/**
+	 * Add an element to the queue. Can be called from any thread, including from inside the handler, until the scheduler is closed.
+	 */
+	public void submit(T element) {
+		submit(element, false);
+	}
+
+	/**
+	 * Add an element to the queue, waiting for room if the queue is full. Must not be called from inside the handler. Throws a {@link ThreadHandlerException} if the handler
+	 * has already failed, since nothing more would be handled anyway.
+	 */
+	public void put(T element) {
+		try {
+			while (!slots.tryAcquire(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (failure != null) {
+					throw new ThreadHandlerException(failure);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ThreadHandlerException(e);
+		}
+		submit(element, true);
+	}
+
+	protected void submit(T element, boolean bounded) {
+		int index;
+		synchronized (this) {
+			if (closed && outstanding.get() == 0) {
+				throw new IllegalStateException("Scheduler is closed");
+			}
+			index = submitted++;
+		}
+		outstanding.incrementAndGet();
+		queue.add(new Task<T>(element, index, bounded));
+	}
+
+	public boolean isFailed() {
+		return failure != null;
+	}
+
+	/**
+	 * Signal that nothing more will be submitted from outside the handler
+	 */
+	public synchronized void close() {
+		closed = true;
+		if (completed > 0 && completed == submitted) {
+			listener.progressCompleted();
+		}
+	}
+
+	/**
+	 * Stop handling elements and wait for the workers to stop. Elements that are already being handled are finished, the ones still waiting are dropped.
+	 */
+	public void cancel() {
+		synchronized (this) {
+			closed = true;
+			cancelled = true;
+		}
+		queue.clear();
+		join();
+	}
+
+	/**
+	 * Wait for the workers to finish. Throws a {@link ThreadHandlerException} if the handler failed on any element.
+	 */
+	public ExecutionStatistics await() {
+		join();
+		if (failure != null) {
+			throw new ThreadHandlerException(failure);
+		}
+		ExecutionStatistics stats = new ExecutionStatistics();
+		stats.setExecutionTime(System.currentTimeMillis() - started);
+		stats.setIterationCount(completed);
+		stats.setThreadCount(permits == null ? workers.size() : concurrency);
+		return stats;
+	}
+
+	protected void join() {
+		List<Thread> threads;
+		synchronized (this) {
+			threads = new ArrayList<Thread>(workers);
+		}
+		for (Thread worker : threads) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (failure == null) {
+					failure = e;
+				}
+				break;
+			}
+		}
+	}
+
+	protected synchronized void progress(Task<T> task) {
+		if (completed == 0) {
+			listener.progressStarted();
+		}
+		completed++;
+		ProgressEvent<T> event = new ProgressEvent<T>();
+		event.setElement(task.element);
+		event.setIndex(task.index);
+		listener.progressOccurred(completed, submitted, event);
+		if (closed && completed == submitted) {
+			listener.progressCompleted();
+		}
+	}
+
+	/**
+	 * Handle one element and report progress. An element that fails because of congestion is put back on the queue instead, a limited number of times.
+	 */
+	protected void execute(Task<T> task, ListIteratorContext<T> context) throws InterruptedException {
+		boolean requeued = false;
+		try {
+			requeued = !handle(task, context);
+		} finally {
+			if (!requeued) {
+				outstanding.decrementAndGet();
+				if (task.bounded) {
+					slots.release();
+				}
+			}
+		}
+		if (!requeued) {
+			progress(task);
+		}
+	}
+
+	protected boolean handle(Task<T> task, ListIteratorContext<T> context) throws InterruptedException {
+		if (controller == null) {
+			handler.handleElement(context, task.index, task.element);
+			return true;
+		}
+		controller.acquire();
+		long start = System.currentTimeMillis();
+		try {
+			handler.handleElement(context, task.index, task.element);
+			controller.onSuccess(System.currentTimeMillis() - start);
+			return true;
+		} catch (RuntimeException e) {
+			if (!controller.isCongestion(e) || task.attempts >= MAX_ATTEMPTS) {
+				throw e;
+			}
+			controller.onCongestion();
+			task.attempts++;
+			queue.add(task);
+			return false;
+		} finally {
+			controller.release();
+		}
+	}
+
+	protected Task<T> next() throws InterruptedException {
+		while (failure == null && !cancelled) {
+			Task<T> task = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			if (task != null) {
+				return task;
+			}
+			if (closed && outstanding.get() == 0) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	protected class Worker implements Runnable {
+		ListIteratorContext<T> context = new ListIteratorContext<T>();
+
+		protected Worker(int id) {
+			context.setId(id);
+			context.setElementHandler(handler);
+		}
+
+		public void run() {
+			try {
+				Task<T> task = next();
+				while (task != null) {
+					execute(task, context);
+					task = next();
+				}
+			} catch (Throwable e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands each element to a new thread once a permit is available, then waits for the last of them to finish
+	 */
+	protected class Dispatcher implements Runnable {
+		ThreadFactory factory;
+
+		protected Dispatcher(ThreadFactory factory) {
+			this.factory = factory;
+		}
+
+		public void run() {
+			try {
+				Task<T> task = next();
+				while (task != null) {
+					permits.acquire();
+					if (failure != null) {
+						permits.release();
+						break;
+					}
+					factory.newThread(new TaskRunner(task)).start();
+					task = next();
+				}
+				permits.acquire(concurrency);
+				permits.release(concurrency);
+			} catch (Throwable e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+	}
+
+	protected class TaskRunner implements Runnable {
+		Task<T> task;
+		ListIteratorContext<T> context = new ListIteratorContext<T>();
+
+		protected TaskRunner(Task<T> task) {
+			this.task = task;
+			context.setId(task.index);
+			context.setElementHandler(handler);
+		}
+
+		public void run() {
+			try {
+				execute(task, context);
+			} catch (Throwable e) {
+				if (failure == null) {
+					failure = e;
+				}
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	protected static class Task<T> {
+		final T element;
+		final int index;
+		final boolean bounded;
+		int attempts;
+
+		protected Task(T element, int index, boolean bounded) {
+			this.element = element;
+			this.index = index;
+			this.bounded = bounded;
+		}
+	}
+
+	/**
+	 * Orders tasks by the element comparator, then by the order they were submitted in
+	 */
+	protected static class TaskComparator<T> implements Comparator<Task<T>> {
+		Comparator<? super T> priority;
+
+		protected TaskComparator(Comparator<? super T> priority) {
+			this.priority = priority;
+		}
+
+		public int compare(Task<T> one, Task<T> two) {
+			int result = priority.compare(one.element, two.element);
+			return result != 0 ? result : one.index - two.index;
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.List;
+
+/**
+ * One request's worth of work for the upload scheduler: either a whole file uploaded with a single PUT, or one part of a file uploaded in parts. The scheduler treats them all
+ * alike, so the number of requests in flight is the same however the bytes are split up.
+ */
+public abstract class UploadUnit {
+
+	/**
+	 * The number of bytes this unit uploads
+	 */
+	public abstract long getLength();
+
+	/**
+	 * Do the work. Returns the units that can be scheduled now that this one is done, eg the parts of a file whose multipart upload was just started.
+	 */
+	public abstract List<UploadUnit> upload();
+
+}
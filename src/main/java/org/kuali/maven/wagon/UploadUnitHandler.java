@@ -15,22 +15,28 @@
  */
 package org.kuali.maven.wagon;
 
-import org.kuali.common.aws.s3.S3Utils;
 import org.kuali.common.threads.ElementHandler;
 import org.kuali.common.threads.ListIteratorContext;
 
-import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.transfer.TransferManager;
+/**
+ * Uploads one unit and puts whatever units that made ready, eg the parts of a file whose multipart upload it started, back on the scheduler
+ */
+public class UploadUnitHandler implements ElementHandler<UploadUnit> {
+
+	UploadScheduler<UploadUnit> scheduler;
 
-public class FileHandler implements ElementHandler<PutFileContext> {
+	public void handleElement(ListIteratorContext<UploadUnit> context, int index, UploadUnit element) {
+		for (UploadUnit unit : element.upload()) {
+			scheduler.submit(unit);
+		}
+	}
+
+	public UploadScheduler<UploadUnit> getScheduler() {
+		return scheduler;
+	}
 
-	public void handleElement(ListIteratorContext<PutFileContext> context, int index, PutFileContext element) {
-		RequestFactory factory = element.getFactory();
-		TransferManager manager = element.getTransferManager();
-		AmazonS3Client client = element.getClient();
-		PutObjectRequest request = factory.getPutObjectRequest(element);
-		S3Utils.getInstance().upload(element.getSource(), request, client, manager);
+	public void setScheduler(UploadScheduler<UploadUnit> scheduler) {
+		this.scheduler = scheduler;
 	}
 
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates virtual threads on runtimes that have them (Java 21 and later). The wagon is compiled for much older runtimes, so the <code>Thread.ofVirtual()</code> API is reached
+ * through reflection.
+ */
+public class VirtualThreads {
+
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+	private static final String BUILDER_CLASS = "java.lang.Thread$Builder";
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Return true if this runtime can create virtual threads
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Return a factory for virtual threads named <code>prefix</code> followed by a counter, or null if this runtime doesn't support virtual threads
+	 */
+	public static ThreadFactory getFactory(String prefix) {
+		if (!isSupported()) {
+			return null;
+		}
+		try {
+			Class<?> builderClass = Class.forName(BUILDER_CLASS);
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			Method factory = builderClass.getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (Exception e) {
+			log.debug("Unable to create a virtual thread factory", e);
+			return null;
+		}
+	}
+
+}
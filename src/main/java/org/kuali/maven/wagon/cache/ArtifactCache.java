@@ -0,0 +1,269 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon.cache;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.kuali.maven.wagon.auth.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * <p>
+ * A read-through cache of downloaded S3 objects shared by every build on the host. Content is keyed by bucket, key, and ETag so a stale copy is never served: the caller
+ * revalidates the ETag with S3 before using an entry.
+ * </p>
+ *
+ * <p>
+ * Entries are written to a temporary file and renamed into place, so other JVMs never see a partially written entry. Installing an entry and evicting entries both happen
+ * while holding an exclusive lock on a lock file in the cache directory. Least recently used entries are evicted once the cache grows past its size limit. Other builds on
+ * the host write to the same directory, so the size is measured from the directory while holding the lock rather than tracked in memory.
+ * </p>
+ */
+public class ArtifactCache {
+
+	private static final Logger log = LoggerFactory.getLogger(ArtifactCache.class);
+	private static final Map<File, ArtifactCache> INSTANCES = new ConcurrentHashMap<File, ArtifactCache>();
+	private static final String LOCK_FILE = ".lock";
+	private static final String TEMP_DIR = ".tmp";
+	private static final char SEPARATOR = '-';
+
+	private final File directory;
+	private final long maxSize;
+
+	protected ArtifactCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Return the cache rooted at <code>directory</code>. Every wagon in this JVM using the same directory shares one instance.
+	 */
+	public static synchronized ArtifactCache getInstance(File directory, long maxSize) {
+		Assert.notNull(directory);
+		File canonical = getCanonicalFile(directory);
+		ArtifactCache cache = INSTANCES.get(canonical);
+		if (cache == null || cache.maxSize != maxSize) {
+			cache = new ArtifactCache(canonical, maxSize);
+			INSTANCES.put(canonical, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Return the cached copy of an object, or null if there isn't one. The entry is marked as recently used.
+	 */
+	public Entry get(String bucketName, String key) {
+		String hash = getHash(bucketName, key);
+		File[] files = getEntryDirectory(hash).listFiles(new PrefixFilter(hash + SEPARATOR));
+		if (files == null || files.length == 0) {
+			return null;
+		}
+		File file = files[0];
+		String eTag = file.getName().substring(hash.length() + 1);
+		file.setLastModified(System.currentTimeMillis());
+		return new Entry(file, eTag);
+	}
+
+	/**
+	 * Copy <code>source</code> into the cache as the content of bucket/key with the given ETag, replacing whatever was cached for that key before
+	 */
+	public void put(String bucketName, String key, String eTag, File source) throws IOException {
+		String hash = getHash(bucketName, key);
+		File temp = new File(new File(directory, TEMP_DIR), UUID.randomUUID().toString());
+		FileUtils.copyFile(source, temp);
+		try {
+			synchronized (this) {
+				FileLock lock = null;
+				RandomAccessFile lockFile = getLockFile();
+				try {
+					lock = lockFile.getChannel().lock();
+					File dir = getEntryDirectory(hash);
+					File entry = new File(dir, hash + SEPARATOR + sanitize(eTag));
+					for (File old : listFiles(dir, new PrefixFilter(hash + SEPARATOR))) {
+						if (!old.equals(entry)) {
+							old.delete();
+						}
+					}
+					dir.mkdirs();
+					if (!temp.renameTo(entry)) {
+						throw new IOException("Unable to rename " + temp + " to " + entry);
+					}
+					evict();
+				} finally {
+					if (lock != null) {
+						lock.release();
+					}
+					IOUtils.closeQuietly(lockFile);
+				}
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Measure the cache and, if it is over its size limit, delete the least recently used entries until it fits again. Caller must hold the lock.
+	 */
+	protected void evict() {
+		List<File> entries = getEntries();
+		long total = getSize(entries);
+		if (total <= maxSize) {
+			return;
+		}
+		Collections.sort(entries, new LastModifiedComparator());
+		int evicted = 0;
+		for (File entry : entries) {
+			if (total <= maxSize) {
+				break;
+			}
+			long length = entry.length();
+			if (entry.delete()) {
+				total -= length;
+				evicted++;
+			}
+		}
+		log.debug("Evicted " + evicted + " entries from " + directory);
+	}
+
+	/**
+	 * Return the total size of the entries in the cache directory
+	 */
+	protected long getSize() {
+		return getSize(getEntries());
+	}
+
+	protected static long getSize(List<File> entries) {
+		long total = 0;
+		for (File entry : entries) {
+			total += entry.length();
+		}
+		return total;
+	}
+
+	protected List<File> getEntries() {
+		List<File> entries = new ArrayList<File>();
+		for (File dir : listFiles(directory, new EntryDirectoryFilter())) {
+			entries.addAll(listFiles(dir, null));
+		}
+		return entries;
+	}
+
+	protected RandomAccessFile getLockFile() throws IOException {
+		directory.mkdirs();
+		return new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+	}
+
+	protected File getEntryDirectory(String hash) {
+		return new File(directory, hash.substring(0, 2));
+	}
+
+	protected String getHash(String bucketName, String key) {
+		return Hashing.sha1().hashString(bucketName + "/" + key, Charsets.UTF_8).toString();
+	}
+
+	/**
+	 * ETags are hex strings, plus a dash and a part count for multipart uploads. Anything else is replaced so the ETag is always safe to use in a file name.
+	 */
+	protected static String sanitize(String eTag) {
+		return eTag.replaceAll("[^A-Za-z0-9\\-]", "_");
+	}
+
+	protected static List<File> listFiles(File dir, FileFilter filter) {
+		File[] files = dir.listFiles(filter);
+		return files == null ? new ArrayList<File>() : Arrays.asList(files);
+	}
+
+	protected static File getCanonicalFile(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unexpected IO error", e);
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * A cached object and the ETag it had when it was downloaded
+	 */
+	public static class Entry {
+		private final File file;
+		private final String eTag;
+
+		public Entry(File file, String eTag) {
+			this.file = file;
+			this.eTag = eTag;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+	}
+
+	protected static class PrefixFilter implements FileFilter {
+		private final String prefix;
+
+		protected PrefixFilter(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public boolean accept(File file) {
+			return file.isFile() && file.getName().startsWith(prefix);
+		}
+	}
+
+	protected static class EntryDirectoryFilter implements FileFilter {
+		public boolean accept(File file) {
+			return file.isDirectory() && file.getName().length() == 2;
+		}
+	}
+
+	protected static class LastModifiedComparator implements Comparator<File> {
+		public int compare(File one, File two) {
+			long difference = one.lastModified() - two.lastModified();
+			return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+		}
+	}
+
+}
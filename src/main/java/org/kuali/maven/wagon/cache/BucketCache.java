@@ -0,0 +1,159 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.kuali.maven.wagon.auth.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Remembers, on disk, which buckets were recently validated and which endpoint serves them. A wagon that finds its bucket here can skip validation and talk to the regional
+ * endpoint straight away. Entries are trusted for a fixed time after the bucket was validated.
+ * </p>
+ *
+ * <p>
+ * Every build on the host shares the file. It is read on every lookup and replaced as a whole on every update, by writing a temporary file and renaming it into place. If two
+ * builds update it at once one of the updates can be lost, which only means that bucket gets validated again next time.
+ * </p>
+ */
+public class BucketCache {
+
+	private static final Logger log = LoggerFactory.getLogger(BucketCache.class);
+	private static final char SEPARATOR = ' ';
+
+	private final File file;
+	private final long ttl;
+
+	public BucketCache(File file, long ttl) {
+		Assert.notNull(file);
+		this.file = file;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Return the entry for <code>key</code> if the bucket was validated within the time to live, otherwise null
+	 */
+	public synchronized Entry get(String key) {
+		if (ttl <= 0) {
+			return null;
+		}
+		String value = load().getProperty(key);
+		if (value == null) {
+			return null;
+		}
+		int index = value.indexOf(SEPARATOR);
+		try {
+			long validated = Long.parseLong(index == -1 ? value : value.substring(0, index));
+			if (System.currentTimeMillis() - validated >= ttl) {
+				return null;
+			}
+			String endpoint = index == -1 ? null : StringUtils.trimToNull(value.substring(index + 1));
+			return new Entry(endpoint, validated);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Record that the bucket for <code>key</code> was validated just now and is served by <code>endpoint</code>. A null endpoint means the default endpoint.
+	 */
+	public synchronized void put(String key, String endpoint) {
+		if (ttl <= 0) {
+			return;
+		}
+		Properties properties = load();
+		properties.setProperty(key, System.currentTimeMillis() + "" + SEPARATOR + StringUtils.trimToEmpty(endpoint));
+		File temp = new File(file.getParentFile(), file.getName() + "." + UUID.randomUUID());
+		OutputStream out = null;
+		try {
+			file.getParentFile().mkdirs();
+			out = new FileOutputStream(temp);
+			properties.store(out, "Buckets validated by the S3 wagon");
+			out.close();
+			if (!temp.renameTo(file)) {
+				// Not every platform lets us rename over an existing file
+				file.delete();
+				if (!temp.renameTo(file)) {
+					throw new IOException("Unable to rename " + temp + " to " + file);
+				}
+			}
+		} catch (IOException e) {
+			log.debug("Unable to update " + file, e);
+		} finally {
+			IOUtils.closeQuietly(out);
+			temp.delete();
+		}
+	}
+
+	protected Properties load() {
+		Properties properties = new Properties();
+		if (!file.exists()) {
+			return properties;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			properties.load(in);
+		} catch (IOException e) {
+			log.debug("Unable to read " + file, e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return properties;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * When a bucket was validated and the endpoint that serves it
+	 */
+	public static class Entry {
+		private final String endpoint;
+		private final long validated;
+
+		public Entry(String endpoint, long validated) {
+			this.endpoint = endpoint;
+			this.validated = validated;
+		}
+
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		public long getValidated() {
+			return validated;
+		}
+	}
+
+}
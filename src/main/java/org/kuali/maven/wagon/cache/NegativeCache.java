@@ -0,0 +1,136 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.kuali.maven.wagon.auth.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * <p>
+ * Remembers, on disk, which keys were not found in a bucket so later builds don't ask S3 again. Each missing key is an empty marker file whose modification time records when
+ * the key was found to be missing. A marker older than the time to live is ignored and removed.
+ * </p>
+ *
+ * <p>
+ * How long markers are trusted follows the Maven update policies: <code>always</code> never trusts them, <code>daily</code> trusts them for a day, <code>never</code> trusts them
+ * forever and <code>interval:N</code> trusts them for N minutes.
+ * </p>
+ */
+public class NegativeCache {
+
+	private static final Logger log = LoggerFactory.getLogger(NegativeCache.class);
+
+	public static final String ALWAYS = "always";
+	public static final String DAILY = "daily";
+	public static final String NEVER = "never";
+	public static final String INTERVAL = "interval:";
+	private static final long MINUTE = 60 * 1000;
+	private static final long DAY = 24 * 60 * MINUTE;
+
+	private final File directory;
+	private final long ttl;
+
+	public NegativeCache(File directory, long ttl) {
+		Assert.notNull(directory);
+		this.directory = directory;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Convert a Maven style update policy into a time to live in milliseconds
+	 */
+	public static long getTtl(String policy) {
+		String value = StringUtils.trimToEmpty(policy).toLowerCase();
+		if (ALWAYS.equals(value)) {
+			return 0;
+		} else if (DAILY.equals(value)) {
+			return DAY;
+		} else if (NEVER.equals(value)) {
+			return Long.MAX_VALUE;
+		} else if (value.startsWith(INTERVAL)) {
+			try {
+				return Long.parseLong(value.substring(INTERVAL.length()).trim()) * MINUTE;
+			} catch (NumberFormatException e) {
+				// Fall through to the error below
+			}
+		}
+		throw new IllegalArgumentException("Unknown update policy '" + policy + "'");
+	}
+
+	/**
+	 * Return true if bucket/key was recently found to be missing
+	 */
+	public boolean isAbsent(String bucketName, String key) {
+		if (ttl <= 0) {
+			return false;
+		}
+		File marker = getMarker(bucketName, key);
+		long lastModified = marker.lastModified();
+		if (lastModified == 0) {
+			return false;
+		}
+		if (System.currentTimeMillis() - lastModified < ttl) {
+			return true;
+		}
+		marker.delete();
+		return false;
+	}
+
+	/**
+	 * Record that bucket/key was not found
+	 */
+	public void markAbsent(String bucketName, String key) {
+		if (ttl <= 0) {
+			return;
+		}
+		File marker = getMarker(bucketName, key);
+		try {
+			FileUtils.touch(marker);
+		} catch (IOException e) {
+			log.debug("Unable to record missing key " + key, e);
+		}
+	}
+
+	/**
+	 * Forget that bucket/key was missing, eg because it was just uploaded
+	 */
+	public void clear(String bucketName, String key) {
+		getMarker(bucketName, key).delete();
+	}
+
+	protected File getMarker(String bucketName, String key) {
+		String hash = Hashing.sha1().hashString(key, Charsets.UTF_8).toString();
+		return new File(new File(directory, bucketName), hash);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon.cache;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * <p>
+ * Remembers the result of <code>getObjectMetadata</code> calls for every wagon in this JVM so Maven asking about the same key several times during a build costs one HEAD
+ * request. Keys that don't exist are remembered too. Entries expire after a fixed time and the least recently used entries are dropped once the cache is full.
+ * </p>
+ *
+ * <p>
+ * Threads asking for the same key at the same time wait for a single request instead of each sending their own.
+ * </p>
+ */
+public class ObjectMetadataCache {
+
+	private static ObjectMetadataCache instance;
+
+	private final Cache<String, Optional<ObjectMetadata>> cache;
+	private final long ttl;
+	private final long maxSize;
+
+	protected ObjectMetadataCache(long ttl, long maxSize) {
+		this.ttl = ttl;
+		this.maxSize = maxSize;
+		// A ttl of zero still shares in flight requests, it just never keeps the answer
+		this.cache = CacheBuilder.newBuilder().expireAfterWrite(Math.max(ttl, 0), TimeUnit.MILLISECONDS).maximumSize(ttl > 0 ? maxSize : 0).recordStats().build();
+	}
+
+	/**
+	 * Return the cache shared by this JVM. The cache is replaced if it was created with different settings.
+	 */
+	public static synchronized ObjectMetadataCache getInstance(long ttl, long maxSize) {
+		if (instance == null || instance.ttl != ttl || instance.maxSize != maxSize) {
+			instance = new ObjectMetadataCache(ttl, maxSize);
+		}
+		return instance;
+	}
+
+	/**
+	 * Return the metadata for bucket/key, or absent if the object doesn't exist. Errors other than a 404 are not cached and are passed on to the caller.
+	 */
+	public Optional<ObjectMetadata> get(final AmazonS3 client, final String bucketName, final String key) {
+		try {
+			return cache.get(getKey(bucketName, key), new Callable<Optional<ObjectMetadata>>() {
+				public Optional<ObjectMetadata> call() {
+					try {
+						return Optional.of(client.getObjectMetadata(bucketName, key));
+					} catch (AmazonS3Exception e) {
+						if (e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+							return Optional.absent();
+						}
+						throw e;
+					}
+				}
+			});
+		} catch (ExecutionException e) {
+			throw new AmazonClientException("Unable to obtain metadata for " + key, e.getCause());
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof AmazonClientException) {
+				throw (AmazonClientException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Return the metadata for bucket/key if it is cached, without contacting S3
+	 */
+	public Optional<ObjectMetadata> getIfPresent(String bucketName, String key) {
+		return cache.getIfPresent(getKey(bucketName, key));
+	}
+
+	/**
+	 * Record metadata we got hold of some other way, eg from a GET
+	 */
+	public void put(String bucketName, String key, ObjectMetadata metadata) {
+		cache.put(getKey(bucketName, key), Optional.of(metadata));
+	}
+
+	/**
+	 * Forget what we know about bucket/key, eg because it was just uploaded
+	 */
+	public void invalidate(String bucketName, String key) {
+		cache.invalidate(getKey(bucketName, key));
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	protected String getKey(String bucketName, String key) {
+		return bucketName + "/" + key;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+	@Test
+	public void reuse() {
+		BufferPool pool = new BufferPool(16, false, 1);
+		ByteBuffer first = pool.acquire();
+		ByteBuffer second = pool.acquire();
+		Assert.assertNotSame(first, second);
+		first.put((byte) 1);
+		pool.release(first);
+		// Only one buffer is kept, the other is left for the garbage collector
+		pool.release(second);
+
+		ByteBuffer reused = pool.acquire();
+		Assert.assertSame(first, reused);
+		Assert.assertEquals(0, reused.position());
+		Assert.assertNotSame(second, pool.acquire());
+
+		// Buffers of some other size are never pooled
+		pool.release(ByteBuffer.allocate(8));
+		Assert.assertEquals(16, pool.acquire().capacity());
+	}
+
+	@Test
+	public void shared() {
+		BufferPool pool = BufferPool.getInstance(1234, false);
+		Assert.assertSame(pool, BufferPool.getInstance(1234, false));
+		Assert.assertNotSame(pool, BufferPool.getInstance(1234, true));
+		Assert.assertTrue(BufferPool.getInstance(1234, true).acquire().isDirect());
+	}
+
+}
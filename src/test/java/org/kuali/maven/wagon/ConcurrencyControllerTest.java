@@ -0,0 +1,80 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.net.SocketTimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+
+public class ConcurrencyControllerTest {
+
+	@Test
+	public void increaseAndDecrease() {
+		ConcurrencyController controller = new ConcurrencyController(2, 8);
+		controller.setCooldown(0);
+		Assert.assertEquals(2, controller.getLimit());
+
+		// Slow start adds one per success
+		controller.onSuccess(100);
+		controller.onSuccess(100);
+		Assert.assertEquals(4, controller.getLimit());
+
+		// Congestion halves it and ends slow start
+		controller.onCongestion();
+		Assert.assertEquals(2, controller.getLimit());
+		controller.onSuccess(100);
+		Assert.assertEquals(2, controller.getLimit());
+		controller.onSuccess(100);
+		Assert.assertEquals(3, controller.getLimit());
+
+		// Responses much slower than average don't earn an increase
+		for (int i = 0; i < 3; i++) {
+			controller.onSuccess(10000);
+		}
+		Assert.assertEquals(3, controller.getLimit());
+		Assert.assertEquals(4, controller.getPeak());
+	}
+
+	@Test
+	public void cooldown() {
+		ConcurrencyController controller = new ConcurrencyController(8, 8);
+		controller.setCooldown(60000);
+		controller.onCongestion();
+		controller.onCongestion();
+		controller.onCongestion();
+		Assert.assertEquals(4, controller.getLimit());
+		Assert.assertEquals(3, controller.getCongestion());
+	}
+
+	@Test
+	public void congestion() {
+		ConcurrencyController controller = new ConcurrencyController(1, 1);
+		AmazonServiceException slowDown = new AmazonServiceException("Please reduce your request rate.");
+		slowDown.setStatusCode(503);
+		slowDown.setErrorCode("SlowDown");
+		Assert.assertTrue(controller.isCongestion(slowDown));
+		Assert.assertTrue(controller.isCongestion(new AmazonClientException("Unable to execute HTTP request", new SocketTimeoutException("Read timed out"))));
+		AmazonServiceException denied = new AmazonServiceException("Access Denied");
+		denied.setStatusCode(403);
+		denied.setErrorCode("AccessDenied");
+		Assert.assertFalse(controller.isCongestion(denied));
+	}
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+
+public class ConnectionWarmerTest {
+
+	@Test
+	public void overlappingRequests() throws InterruptedException {
+		ListingClient client = new ListingClient(3);
+		ConnectionWarmer.start(client, "bucket", 3);
+		Assert.assertTrue(client.done.await(10, TimeUnit.SECONDS));
+		// One zero key listing per connection, each on its own thread, and a failure doesn't escape
+		Assert.assertEquals(3, client.peak.get());
+		Assert.assertEquals(0, client.maxKeys.get());
+	}
+
+	protected static class ListingClient extends AmazonS3Client {
+		CountDownLatch arrived;
+		CountDownLatch done;
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		AtomicInteger maxKeys = new AtomicInteger();
+
+		protected ListingClient(int connections) {
+			this.arrived = new CountDownLatch(connections);
+			this.done = new CountDownLatch(connections);
+		}
+
+		@Override
+		public ObjectListing listObjects(ListObjectsRequest request) {
+			try {
+				int now = active.incrementAndGet();
+				synchronized (peak) {
+					peak.set(Math.max(peak.get(), now));
+				}
+				maxKeys.addAndGet(request.getMaxKeys());
+				arrived.countDown();
+				arrived.await(10, TimeUnit.SECONDS);
+				// Failures are only logged
+				throw new AmazonClientException("Connection refused");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} finally {
+				active.decrementAndGet();
+				done.countDown();
+			}
+		}
+	}
+
+}
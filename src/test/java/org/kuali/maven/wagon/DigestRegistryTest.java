@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class DigestRegistryTest {
+
+	@Test
+	public void expected() {
+		byte[] bytes = "content".getBytes(Charsets.UTF_8);
+		Digests digests = Digests.compute(bytes, 0, bytes.length);
+		Assert.assertEquals("mgNkuembtIDdJeHwKEyFVQ==", digests.getContentMd5());
+
+		DigestRegistry registry = new DigestRegistry();
+		registry.put("a/b/foo.jar", digests);
+		Assert.assertEquals("9a0364b9e99bb480dd25e1f0284c8555", registry.getExpected("a/b/foo.jar.md5"));
+		Assert.assertEquals("040f06fd774092478d450774f5ba30c5da78acc8", registry.getExpected("a/b/foo.jar.sha1"));
+		Assert.assertEquals("ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73", registry.getExpected("a/b/foo.jar.sha256"));
+		Assert.assertNull(registry.getExpected("a/b/foo.jar.asc"));
+		Assert.assertNull(registry.getExpected("a/b/bar.jar.sha1"));
+		Assert.assertNull(registry.getExpected("a/b/foo"));
+	}
+
+	@Test
+	public void parse() {
+		Assert.assertEquals("abc123", DigestRegistry.parse("abc123"));
+		Assert.assertEquals("abc123", DigestRegistry.parse(" abc123  foo.jar\n"));
+		Assert.assertEquals("", DigestRegistry.parse(null));
+	}
+
+}
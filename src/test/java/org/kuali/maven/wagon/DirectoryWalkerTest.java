@@ -0,0 +1,59 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DirectoryWalkerTest {
+
+	@Test
+	public void walk() throws IOException {
+		File dir = new File("target/walker");
+		FileUtils.deleteQuietly(dir);
+		FileUtils.touch(new File(dir, "index.html"));
+		FileUtils.touch(new File(dir, "css/style.css"));
+		FileUtils.touch(new File(dir, "css/images/logo.png"));
+		final List<String> destinations = new ArrayList<String>();
+		boolean completed = DirectoryWalker.walk(dir, "site", new DirectoryWalker.Visitor() {
+			public boolean visit(File file, String destination) {
+				destinations.add(destination);
+				return true;
+			}
+		});
+		Collections.sort(destinations);
+		Assert.assertTrue(completed);
+		Assert.assertEquals("[site/css/images/logo.png, site/css/style.css, site/index.html]", destinations.toString());
+
+		destinations.clear();
+		completed = DirectoryWalker.walk(dir, "site", new DirectoryWalker.Visitor() {
+			public boolean visit(File file, String destination) {
+				destinations.add(destination);
+				return false;
+			}
+		});
+		Assert.assertFalse(completed);
+		Assert.assertEquals(1, destinations.size());
+	}
+
+}
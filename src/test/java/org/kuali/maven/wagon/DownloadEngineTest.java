@@ -0,0 +1,165 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.observers.AbstractTransferListener;
+import org.apache.maven.wagon.resource.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+public class DownloadEngineTest {
+
+	@Test
+	public void heapCopy() throws IOException {
+		copy(new BufferPool(1024, false));
+	}
+
+	@Test
+	public void directCopy() throws IOException {
+		copy(new BufferPool(1024, true));
+	}
+
+	protected void copy(BufferPool pool) throws IOException {
+		byte[] content = new byte[10000];
+		new Random(1).nextBytes(content);
+		File file = File.createTempFile("download", ".bin");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			CountingListener listener = new CountingListener();
+			long copied = new DownloadEngine(pool).copy(new TrickleInputStream(new ByteArrayInputStream(content)), raf.getChannel(), 5, content.length, getProgress(listener));
+			Assert.assertEquals(content.length, copied);
+			raf.close();
+
+			// Every byte lands at its offset, and progress is reported once per full buffer
+			byte[] written = FileUtils.readFileToByteArray(file);
+			Assert.assertEquals(content.length + 5, written.length);
+			byte[] range = new byte[content.length];
+			System.arraycopy(written, 5, range, 0, range.length);
+			Assert.assertArrayEquals(content, range);
+			Assert.assertEquals(10, listener.events);
+			Assert.assertEquals(content.length, listener.bytes);
+		} finally {
+			raf.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void releasesOnError() throws IOException {
+		BufferPool pool = new BufferPool(1024, false, 1);
+		ByteBuffer buffer = pool.acquire();
+		pool.release(buffer);
+		File file = File.createTempFile("download", ".bin");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			new DownloadEngine(pool).copy(new FailingInputStream(3000), raf.getChannel(), 0, 10000, null);
+			Assert.fail("The stream failed");
+		} catch (IOException e) {
+			// The buffer went back to the pool anyway
+			Assert.assertSame(buffer, pool.acquire());
+		} finally {
+			raf.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void abortsOnError() throws IOException {
+		HttpGet get = new HttpGet("http://bucket.s3.amazonaws.com/key");
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentLength(10000);
+		S3Object object = new S3Object();
+		object.setKey("key");
+		object.setObjectMetadata(metadata);
+		object.setObjectContent(new S3ObjectInputStream(new FailingInputStream(3000), get));
+		File file = File.createTempFile("download", ".bin");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			new DownloadEngine(new BufferPool(1024, false)).download(object, raf.getChannel(), 0, null, null);
+			Assert.fail("The stream failed");
+		} catch (IOException e) {
+			// The rest of the object isn't drained off the connection
+			Assert.assertTrue(get.isAborted());
+		} finally {
+			raf.close();
+			file.delete();
+		}
+	}
+
+	protected TransferProgress getProgress(CountingListener listener) {
+		TransferListenerSupport listeners = new TransferListenerSupport(new S3Wagon());
+		listeners.addListener(listener);
+		return new TransferProgress(new Resource("key"), TransferEvent.REQUEST_GET, listeners);
+	}
+
+	protected static class CountingListener extends AbstractTransferListener {
+		int events;
+		long bytes;
+
+		@Override
+		public void transferProgress(TransferEvent event, byte[] buffer, int length) {
+			events++;
+			bytes += length;
+		}
+	}
+
+	/**
+	 * Hands out at most 100 bytes a read, like a network stream
+	 */
+	protected static class TrickleInputStream extends FilterInputStream {
+		protected TrickleInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 100));
+		}
+	}
+
+	protected static class FailingInputStream extends InputStream {
+		int remaining;
+
+		protected FailingInputStream(int remaining) {
+			this.remaining = remaining;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining-- <= 0) {
+				throw new IOException("Connection reset");
+			}
+			return 0;
+		}
+	}
+
+}
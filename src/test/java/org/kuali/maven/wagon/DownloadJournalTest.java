@@ -0,0 +1,91 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DownloadJournalTest {
+
+	@Test
+	public void saveAndLoad() throws IOException {
+		File part = File.createTempFile("journal", DownloadJournal.PART_SUFFIX);
+		RandomAccessFile file = new RandomAccessFile(part, "rw");
+		file.setLength(100);
+		file.close();
+		try {
+			DownloadJournal journal = new DownloadJournal(part, "bucket", "release/foo.zip", "abc123", 100);
+			journal.update(40);
+			journal.save();
+
+			DownloadJournal loaded = DownloadJournal.load(part, "bucket", "release/foo.zip");
+			Assert.assertNotNull(loaded);
+			Assert.assertEquals("abc123", loaded.getETag());
+			Assert.assertEquals(40, loaded.getBytes());
+			Assert.assertEquals(100, loaded.getLength());
+
+			// A journal for some other object is never used
+			Assert.assertNull(DownloadJournal.load(part, "bucket", "release/bar.zip"));
+
+			journal.delete();
+			Assert.assertFalse(part.exists());
+			Assert.assertNull(DownloadJournal.load(part, "bucket", "release/foo.zip"));
+		} finally {
+			part.delete();
+			DownloadJournal.getJournalFile(part).delete();
+		}
+	}
+
+	@Test
+	public void lock() throws Exception {
+		final File part = File.createTempFile("journal", DownloadJournal.PART_SUFFIX);
+		final CountDownLatch acquired = new CountDownLatch(1);
+		DownloadJournal.Lock lock = DownloadJournal.lock(part);
+		try {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						DownloadJournal.lock(part).release();
+						acquired.countDown();
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+			thread.start();
+
+			// A second resume of the same file waits for the first one to finish
+			Assert.assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+			lock.release();
+			Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+			thread.join();
+
+			// Nothing is left behind once the lock is released
+			Assert.assertFalse(DownloadJournal.getLockFile(part).exists());
+		} finally {
+			part.delete();
+			DownloadJournal.getLockFile(part).delete();
+		}
+	}
+
+}
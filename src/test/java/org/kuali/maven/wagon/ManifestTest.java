@@ -0,0 +1,45 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ManifestTest {
+
+	@Test
+	public void roundTrip() throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.put("index.html", 10, "0123456789abcdef0123456789ABCDEF");
+		manifest.put("css/style.css", 5, "d41d8cd98f00b204e9800998ecf8427e");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		manifest.write(out);
+		Manifest copy = Manifest.read(new ByteArrayInputStream(out.toByteArray()));
+
+		Assert.assertEquals(2, copy.size());
+		Assert.assertEquals(10, copy.get("index.html").getSize());
+		Assert.assertEquals("0123456789abcdef0123456789abcdef", copy.get("index.html").getMd5());
+		Assert.assertTrue(copy.matches("css/style.css", new Manifest.Entry(5, "d41d8cd98f00b204e9800998ecf8427e")));
+		Assert.assertFalse(copy.matches("css/style.css", new Manifest.Entry(6, "d41d8cd98f00b204e9800998ecf8427e")));
+		Assert.assertFalse(copy.matches("missing.html", new Manifest.Entry(5, "d41d8cd98f00b204e9800998ecf8427e")));
+	}
+
+}
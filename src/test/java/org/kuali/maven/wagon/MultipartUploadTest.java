@@ -0,0 +1,203 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.observers.ChecksumObserver;
+import org.apache.maven.wagon.resource.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.google.common.hash.Hashing;
+
+public class MultipartUploadTest {
+
+	@Test
+	public void partSize() {
+		Assert.assertEquals(3, MultipartUpload.getPartCount(25, 10));
+		Assert.assertEquals(1, MultipartUpload.getPartCount(0, 10));
+		long huge = 10L * 1024 * 1024 * 1024 * 1024;
+		Assert.assertEquals(MultipartUpload.MAX_PARTS, MultipartUpload.getPartCount(huge, 5 * 1024 * 1024));
+		MultipartEngine engine = new MultipartEngine(0, 0, 4);
+		Assert.assertEquals(MultipartEngine.MIN_PART_SIZE, engine.getPartSize());
+		Assert.assertEquals(1, engine.getRequestCount(MultipartEngine.MIN_PART_SIZE - 1));
+		Assert.assertEquals(3, engine.getRequestCount(MultipartEngine.MIN_PART_SIZE * 3));
+	}
+
+	@Test
+	public void completesOnceInOrder() {
+		PutFileContext context = new PutFileContext();
+		context.setSource(new File("pom.xml"));
+		context.setLength(25);
+		RecordingClient client = new RecordingClient();
+		MultipartUpload upload = new MultipartUpload(client, context, "bucket", "key", "id", 10);
+		List<UploadUnit> parts = upload.getParts();
+		Assert.assertEquals(3, parts.size());
+		Assert.assertEquals(5, parts.get(2).getLength());
+
+		// Parts finish in any order, the last one to finish completes the upload
+		parts.get(2).upload();
+		parts.get(0).upload();
+		Assert.assertFalse(upload.isCompleted());
+		parts.get(1).upload();
+		Assert.assertTrue(upload.isCompleted());
+		Assert.assertEquals(1, client.completed.size());
+		Assert.assertEquals(1, client.completed.get(0).getPartETags().get(0).getPartNumber());
+		Assert.assertEquals(3, client.completed.get(0).getPartETags().get(2).getPartNumber());
+		Assert.assertEquals(3, client.md5s.size());
+	}
+
+	@Test
+	public void duplicatePartsAndRetriedCompletion() {
+		PutFileContext context = new PutFileContext();
+		context.setSource(new File("pom.xml"));
+		context.setLength(25);
+		RecordingClient client = new RecordingClient();
+		client.failures = 1;
+		MultipartUpload upload = new MultipartUpload(client, context, "bucket", "key", "id", 10);
+		List<UploadUnit> parts = upload.getParts();
+		parts.get(0).upload();
+		// A part uploaded twice replaces the first copy
+		upload.uploadPart(1);
+		parts.get(1).upload();
+		parts.get(2).upload();
+		Assert.assertTrue(upload.isCompleted());
+		Assert.assertEquals(3, client.completed.get(0).getPartETags().size());
+
+		// Running a part again after the upload completed sends nothing
+		parts.get(2).upload();
+		Assert.assertEquals(1, client.completed.size());
+		Assert.assertEquals(4, client.md5s.size());
+	}
+
+	@Test
+	public void digestsWholeFile() throws IOException {
+		PutFileContext context = new PutFileContext();
+		context.setSource(new File("pom.xml"));
+		context.setLength(25);
+		MultipartUpload upload = new MultipartUpload(new RecordingClient(), context, "bucket", "key", "id", 10);
+		upload.setDigester(new Digests.Digester());
+		List<UploadUnit> parts = upload.getParts();
+		parts.get(1).upload();
+		parts.get(2).upload();
+		Assert.assertNull(upload.getDigests());
+		parts.get(0).upload();
+
+		byte[] bytes = new byte[25];
+		FileInputStream in = new FileInputStream(context.getSource());
+		try {
+			IOUtils.readFully(in, bytes);
+		} finally {
+			in.close();
+		}
+		Assert.assertEquals(Digests.compute(bytes, 0, 25).getSha1(), upload.getDigests().getSha1());
+	}
+
+	@Test
+	public void progressInOrder() throws Exception {
+		PutFileContext context = new PutFileContext();
+		context.setSource(new File("pom.xml"));
+		context.setLength(25);
+		S3Wagon wagon = new S3Wagon();
+		TransferListenerSupport listeners = new TransferListenerSupport(wagon);
+		ChecksumObserver observer = new ChecksumObserver();
+		listeners.addListener(observer);
+		Resource resource = new Resource("key");
+		context.setProgress(new TransferProgress(resource, TransferEvent.REQUEST_PUT, listeners));
+		MultipartUpload upload = new MultipartUpload(new RecordingClient(), context, "bucket", "key", "id", 10);
+		List<UploadUnit> parts = upload.getParts();
+
+		// The second part streams ahead of its turn, the first streams straight to the listeners and the third is sent twice
+		listeners.fireTransferInitiated(resource, TransferEvent.REQUEST_PUT);
+		parts.get(1).upload();
+		Assert.assertEquals(0, upload.reported);
+		parts.get(0).upload();
+		Assert.assertEquals(20, upload.reported);
+		upload.uploadPart(3);
+		parts.get(2).upload();
+		listeners.fireTransferCompleted(resource, TransferEvent.REQUEST_PUT);
+
+		byte[] bytes = new byte[25];
+		FileInputStream in = new FileInputStream(context.getSource());
+		try {
+			IOUtils.readFully(in, bytes);
+		} finally {
+			in.close();
+		}
+		Assert.assertEquals(Hashing.md5().hashBytes(bytes).toString(), observer.getActualChecksum());
+	}
+
+	@Test(expected = AmazonClientException.class)
+	public void corruptPart() {
+		PutFileContext context = new PutFileContext();
+		context.setSource(new File("pom.xml"));
+		context.setLength(25);
+		RecordingClient client = new RecordingClient();
+		client.corrupt = true;
+		new MultipartUpload(client, context, "bucket", "key", "id", 10).getParts().get(0).upload();
+	}
+
+	protected static class RecordingClient extends AmazonS3Client {
+		List<String> md5s = new ArrayList<String>();
+		List<CompleteMultipartUploadRequest> completed = new ArrayList<CompleteMultipartUploadRequest>();
+		boolean corrupt;
+		int failures;
+
+		@Override
+		public UploadPartResult uploadPart(UploadPartRequest request) {
+			String md5;
+			try {
+				byte[] bytes = IOUtils.toByteArray(request.getInputStream());
+				Assert.assertEquals(request.getPartSize(), bytes.length);
+				md5 = Hashing.md5().hashBytes(bytes).toString();
+			} catch (IOException e) {
+				throw new AmazonClientException("Unexpected IO error", e);
+			}
+			md5s.add(md5);
+			UploadPartResult result = new UploadPartResult();
+			result.setPartNumber(request.getPartNumber());
+			result.setETag(corrupt ? "0123456789abcdef0123456789abcdef" : md5);
+			return result;
+		}
+
+		@Override
+		public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+			if (failures > 0) {
+				failures--;
+				AmazonServiceException e = new AmazonServiceException("Slow down");
+				e.setStatusCode(503);
+				throw e;
+			}
+			completed.add(request);
+			return new CompleteMultipartUploadResult();
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+public class ObjectIndexTest {
+
+	@Test
+	public void lookup() {
+		ObjectIndex index = new ObjectIndex("site/");
+		index.handleObject(getSummary("site/index.html", 10, "aaa"));
+		index.handleObject(getSummary("site/css/style.css", 5, "bbb"));
+
+		Assert.assertEquals(2, index.size());
+		Assert.assertEquals(15, index.getTotalSize());
+		Assert.assertTrue(index.contains("css/style.css"));
+		Assert.assertFalse(index.contains("site/css/style.css"));
+		ObjectIndex.Entry entry = index.get("index.html");
+		Assert.assertEquals(10, entry.getSize());
+		Assert.assertEquals("aaa", entry.getETag());
+		Assert.assertEquals(1000, entry.getLastModified());
+	}
+
+	protected S3ObjectSummary getSummary(String key, long size, String eTag) {
+		S3ObjectSummary summary = new S3ObjectSummary();
+		summary.setKey(key);
+		summary.setSize(size);
+		summary.setETag(eTag);
+		summary.setLastModified(new Date(1000));
+		return summary;
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+
+public class PrunerTest {
+
+	@Test
+	public void prune() {
+		DeletingClient client = new DeletingClient();
+		Pruner pruner = new Pruner(client, "bucket", "a/", new HashSet<String>(Arrays.asList("1", "b/3", "d/6")), false);
+		Assert.assertEquals(4, pruner.call().intValue());
+		Assert.assertEquals(Arrays.asList("a/2", "a/7", "a/b/4", "a/b/c/5"), client.deleted);
+	}
+
+	@Test
+	public void dryRun() {
+		DeletingClient client = new DeletingClient();
+		Pruner pruner = new Pruner(client, "bucket", "a/", new HashSet<String>(Arrays.asList("1", "b/3", "d/6")), true);
+		Assert.assertEquals(4, pruner.call().intValue());
+		Assert.assertTrue(client.deleted.isEmpty());
+	}
+
+	protected static class DeletingClient extends S3ListerTest.PagingClient {
+		List<String> deleted = new ArrayList<String>();
+
+		protected DeletingClient() {
+			super(3);
+		}
+
+		@Override
+		public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+			for (KeyVersion key : request.getKeys()) {
+				deleted.add(key.getKey());
+			}
+			return null;
+		}
+	}
+
+}
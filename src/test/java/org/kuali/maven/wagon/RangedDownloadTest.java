@@ -0,0 +1,312 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.observers.ChecksumObserver;
+import org.apache.maven.wagon.resource.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kuali.maven.wagon.RangedDownload.Range;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.hash.Hashing;
+
+public class RangedDownloadTest {
+
+	@Test
+	public void ranges() {
+		RangedDownload download = new RangedDownload(null, null, "bucket", "key", null, 25, 10, 4);
+		List<Range> ranges = download.getRanges(0);
+		Assert.assertEquals(3, ranges.size());
+		Assert.assertEquals(0, ranges.get(0).offset);
+		Assert.assertEquals(10, ranges.get(1).offset);
+		Assert.assertEquals(20, ranges.get(2).offset);
+		Assert.assertEquals(5, ranges.get(2).length);
+	}
+
+	@Test
+	public void resumedRanges() {
+		RangedDownload download = new RangedDownload(null, null, "bucket", "key", null, 25, 10, 4);
+		List<Range> ranges = download.getRanges(12);
+		Assert.assertEquals(2, ranges.size());
+		Assert.assertEquals(12, ranges.get(0).offset);
+		Assert.assertEquals(10, ranges.get(0).length);
+		Assert.assertEquals(22, ranges.get(1).offset);
+		Assert.assertEquals(3, ranges.get(1).length);
+	}
+
+	@Test(timeout = 10000)
+	public void download() throws Exception {
+		RangeClient client = new RangeClient(25);
+		// The first range is slow, so the others land on disk before it
+		client.slow.add(0L);
+		File file = File.createTempFile("ranged", ".part");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(25);
+			ChecksumObserver observer = new ChecksumObserver();
+			TransferListenerSupport listeners = new TransferListenerSupport(new S3Wagon());
+			listeners.addListener(observer);
+			Resource resource = new Resource("key");
+			DownloadJournal journal = new DownloadJournal(file, "bucket", "key", "abc", 25);
+			journal.setCheckpointInterval(Long.MAX_VALUE);
+
+			listeners.fireTransferInitiated(resource, TransferEvent.REQUEST_GET);
+			S3Object first = client.getObject(0, 25);
+			getDownload(client).execute(first, raf.getChannel(), 0, new TransferProgress(resource, TransferEvent.REQUEST_GET, listeners), journal);
+			listeners.fireTransferCompleted(resource, TransferEvent.REQUEST_GET);
+			raf.close();
+
+			// Every range is written at its offset
+			Assert.assertArrayEquals(client.content, FileUtils.readFileToByteArray(file));
+			Assert.assertEquals(25, journal.getBytes());
+
+			// The listeners saw the bytes in order even though the ranges finished out of order
+			Assert.assertEquals(Hashing.md5().hashBytes(client.content).toString(), observer.getActualChecksum());
+
+			// The first range comes from the stream that was already open, the other two are pinned to the ETag
+			Assert.assertEquals(2, client.requests.size());
+			for (GetObjectRequest request : client.requests) {
+				Assert.assertEquals(Collections.singletonList("abc"), request.getMatchingETagConstraints());
+			}
+			Assert.assertTrue(client.gets.get(0).isAborted());
+		} finally {
+			raf.close();
+			file.delete();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void modified() throws Exception {
+		RangeClient client = new RangeClient(25);
+		S3Object first = client.getObject(0, 25);
+		// The object was deployed again after the first request
+		client.eTag = "def";
+		try {
+			execute(client, first);
+			Assert.fail("The object changed");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("modified"));
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void failedRange() throws Exception {
+		RangeClient client = new RangeClient(25);
+		client.failing.add(10L);
+		client.blocking.add(20L);
+		S3Object first = client.getObject(0, 25);
+		client.blocking.add(0L);
+		try {
+			execute(client, getBlocking(client, first));
+			Assert.fail("A range failed");
+		} catch (IOException e) {
+			Assert.assertEquals("Connection reset", e.getMessage());
+		}
+		// Ranges still in flight are aborted rather than left to run
+		for (HttpGet get : client.gets) {
+			Assert.assertTrue(get.isAborted());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void cancel() throws Exception {
+		final RangeClient client = new RangeClient(25);
+		client.blocking.add(0L);
+		client.blocking.add(10L);
+		client.blocking.add(20L);
+		final RangedDownload download = getDownload(client);
+		Thread canceller = new Thread() {
+			@Override
+			public void run() {
+				try {
+					client.started.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				download.cancel();
+			}
+		};
+		client.started = new CountDownLatch(3);
+		canceller.start();
+		File file = File.createTempFile("ranged", ".part");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			download.execute(null, raf.getChannel(), 0, null, null);
+			Assert.fail("The download was cancelled");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("cancelled"));
+		} finally {
+			raf.close();
+			file.delete();
+			canceller.join();
+		}
+		for (HttpGet get : client.gets) {
+			Assert.assertTrue(get.isAborted());
+		}
+	}
+
+	protected RangedDownload getDownload(RangeClient client) {
+		return new RangedDownload(client, new DownloadEngine(BufferPool.getInstance(4, false)), "bucket", "key", "abc", client.content.length, 10, 3);
+	}
+
+	protected void execute(RangeClient client, S3Object first) throws IOException {
+		File file = File.createTempFile("ranged", ".part");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			getDownload(client).execute(first, raf.getChannel(), 0, null, null);
+		} finally {
+			raf.close();
+			file.delete();
+		}
+	}
+
+	protected S3Object getBlocking(RangeClient client, S3Object object) {
+		HttpGet get = client.gets.get(client.gets.size() - 1);
+		object.setObjectContent(new S3ObjectInputStream(new BlockingInputStream(), get));
+		return object;
+	}
+
+	/**
+	 * Serves byte ranges of some random content, and answers a request pinned to an ETag the object no longer has with null, like the SDK does for a 412
+	 */
+	protected static class RangeClient extends AmazonS3Client {
+		byte[] content;
+		String eTag = "abc";
+		List<GetObjectRequest> requests = Collections.synchronizedList(new ArrayList<GetObjectRequest>());
+		List<HttpGet> gets = Collections.synchronizedList(new ArrayList<HttpGet>());
+		Set<Long> slow = new HashSet<Long>();
+		Set<Long> failing = new HashSet<Long>();
+		Set<Long> blocking = new HashSet<Long>();
+		CountDownLatch started = new CountDownLatch(0);
+
+		protected RangeClient(int length) {
+			content = new byte[length];
+			new Random(1).nextBytes(content);
+		}
+
+		@Override
+		public S3Object getObject(GetObjectRequest request) {
+			requests.add(request);
+			List<String> eTags = request.getMatchingETagConstraints();
+			if (eTags != null && !eTags.contains(eTag)) {
+				return null;
+			}
+			long[] range = request.getRange();
+			S3Object object = getObject((int) range[0], (int) range[1] + 1);
+			started.countDown();
+			return object;
+		}
+
+		protected S3Object getObject(int from, int to) {
+			InputStream in = new ByteArrayInputStream(content, from, to - from);
+			if (slow.contains((long) from)) {
+				in = new SlowInputStream(in);
+			} else if (failing.contains((long) from)) {
+				in = new FailingInputStream(in);
+			} else if (blocking.contains((long) from)) {
+				in = new BlockingInputStream();
+			}
+			HttpGet get = new HttpGet("http://bucket.s3.amazonaws.com/key");
+			gets.add(get);
+			ObjectMetadata metadata = new ObjectMetadata();
+			metadata.setContentLength(to - from);
+			metadata.setHeader("ETag", eTag);
+			S3Object object = new S3Object();
+			object.setKey("key");
+			object.setObjectMetadata(metadata);
+			object.setObjectContent(new S3ObjectInputStream(in, get));
+			return object;
+		}
+	}
+
+	protected static class SlowInputStream extends FilterInputStream {
+		protected SlowInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted");
+			}
+			return super.read(b, off, len);
+		}
+	}
+
+	protected static class FailingInputStream extends FilterInputStream {
+		protected FailingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			throw new IOException("Connection reset");
+		}
+	}
+
+	/**
+	 * Never returns any data, a read only ends when the stream is closed by an abort
+	 */
+	protected static class BlockingInputStream extends InputStream {
+		CountDownLatch closed = new CountDownLatch(1);
+
+		@Override
+		public int read() throws IOException {
+			try {
+				closed.await(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// Treated the same as being closed
+			}
+			throw new IOException("Stream closed");
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return read();
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+		}
+	}
+
+}
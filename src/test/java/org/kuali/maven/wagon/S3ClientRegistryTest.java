@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+
+public class S3ClientRegistryTest {
+
+	@Test
+	public void shared() {
+		S3ClientRegistry registry = new S3ClientRegistry();
+		registry.setIdleTimeout(0);
+		ClientConfiguration configuration = new ClientConfiguration();
+		S3ClientRegistry.Entry one = registry.acquire(new BasicAWSCredentials("access", "secret"), configuration, null);
+		S3ClientRegistry.Entry two = registry.acquire(new BasicAWSCredentials("access", "secret"), new ClientConfiguration(), null);
+		S3ClientRegistry.Entry other = registry.acquire(new BasicAWSCredentials("access", "other"), configuration, null);
+		Assert.assertSame(one, two);
+		Assert.assertNotSame(one, other);
+		Assert.assertEquals(2, registry.size());
+
+		configuration.setMaxConnections(100);
+		Assert.assertNotSame(one, registry.acquire(new BasicAWSCredentials("access", "secret"), configuration, null));
+
+		registry.release(one);
+		Assert.assertFalse(one.isClosed());
+		registry.release(two);
+		Assert.assertTrue(one.isClosed());
+		Assert.assertEquals(2, registry.size());
+	}
+
+	@Test
+	public void idle() throws InterruptedException {
+		S3ClientRegistry registry = new S3ClientRegistry();
+		registry.setIdleTimeout(50);
+		S3ClientRegistry.Entry one = registry.acquire(new BasicAWSCredentials("access", "secret"), new ClientConfiguration(), null);
+		registry.release(one);
+		// Picked up again before the idle timeout, so it is reused
+		Assert.assertSame(one, registry.acquire(new BasicAWSCredentials("access", "secret"), new ClientConfiguration(), null));
+		registry.release(one);
+		Thread.sleep(500);
+		Assert.assertTrue(one.isClosed());
+		Assert.assertEquals(0, registry.size());
+	}
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+public class S3ListerTest {
+
+	private static final List<String> KEYS = Arrays.asList("a/1", "a/2", "a/b/3", "a/b/4", "a/b/c/5", "a/d/6", "a/7", "e/8");
+
+	@Test
+	public void pages() {
+		Collector collector = new Collector();
+		int pages = new S3Lister(new PagingClient(2), "bucket", 1).list("a/", null, collector);
+		Assert.assertEquals(4, pages);
+		Assert.assertEquals(Arrays.asList("a/1", "a/2", "a/7", "a/b/3", "a/b/4", "a/b/c/5", "a/d/6"), collector.getKeys());
+	}
+
+	@Test
+	public void delimited() {
+		Collector collector = new Collector();
+		new S3Lister(new PagingClient(2), "bucket", 1).list("a/", "/", collector);
+		Assert.assertEquals(Arrays.asList("a/1", "a/2", "a/7"), collector.getKeys());
+		Assert.assertEquals(Arrays.asList("a/b/", "a/d/"), collector.getPrefixes());
+	}
+
+	@Test
+	public void walk() {
+		Collector collector = new Collector();
+		new S3Lister(new PagingClient(2), "bucket", 4).walk("a/", collector);
+		Assert.assertEquals(Arrays.asList("a/1", "a/2", "a/7", "a/b/3", "a/b/4", "a/b/c/5", "a/d/6"), collector.getKeys());
+		Assert.assertEquals(Arrays.asList("a/b/", "a/b/c/", "a/d/"), collector.getPrefixes());
+	}
+
+	protected static class Collector implements ListingHandler {
+		List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+		List<String> prefixes = Collections.synchronizedList(new ArrayList<String>());
+
+		public void handleObject(S3ObjectSummary summary) {
+			keys.add(summary.getKey());
+		}
+
+		public void handlePrefix(String prefix) {
+			prefixes.add(prefix);
+		}
+
+		public List<String> getKeys() {
+			List<String> sorted = new ArrayList<String>(keys);
+			Collections.sort(sorted);
+			return sorted;
+		}
+
+		public List<String> getPrefixes() {
+			List<String> sorted = new ArrayList<String>(prefixes);
+			Collections.sort(sorted);
+			return sorted;
+		}
+	}
+
+	/**
+	 * Serves {@link #KEYS} a few entries per page the same way S3 does
+	 */
+	protected static class PagingClient extends AmazonS3Client {
+		int pageSize;
+
+		protected PagingClient(int pageSize) {
+			this.pageSize = pageSize;
+		}
+
+		@Override
+		public ObjectListing listObjects(ListObjectsRequest request) {
+			List<String> sorted = new ArrayList<String>(KEYS);
+			Collections.sort(sorted);
+			ObjectListing listing = new ObjectListing();
+			listing.setBucketName(request.getBucketName());
+			listing.setPrefix(request.getPrefix());
+			listing.setDelimiter(request.getDelimiter());
+			int entries = 0;
+			String last = null;
+			for (String key : sorted) {
+				if (!key.startsWith(request.getPrefix()) || (request.getMarker() != null && key.compareTo(request.getMarker()) <= 0)) {
+					continue;
+				}
+				String entry = key;
+				int index = request.getDelimiter() == null ? -1 : key.indexOf(request.getDelimiter(), request.getPrefix().length());
+				if (index != -1) {
+					entry = key.substring(0, index + 1);
+					if (listing.getCommonPrefixes().contains(entry) || entry.equals(request.getMarker())) {
+						continue;
+					}
+				}
+				if (entries == pageSize) {
+					listing.setTruncated(true);
+					listing.setNextMarker(last);
+					break;
+				}
+				if (index == -1) {
+					S3ObjectSummary summary = new S3ObjectSummary();
+					summary.setKey(key);
+					listing.getObjectSummaries().add(summary);
+				} else {
+					listing.getCommonPrefixes().add(entry);
+				}
+				last = entry;
+				entries++;
+			}
+			return listing;
+		}
+
+		@Override
+		public ObjectListing listNextBatchOfObjects(ObjectListing previous) {
+			return listObjects(new ListObjectsRequest(previous.getBucketName(), previous.getPrefix(), previous.getNextMarker(), previous.getDelimiter(), null));
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SmallObjectUploaderTest {
+
+	@Test
+	public void read() throws IOException {
+		File file = new File(FileUtils.getTempDirectory(), "small-object-" + System.nanoTime());
+		try {
+			FileUtils.writeStringToFile(file, "content");
+			SmallObjectUploader uploader = new SmallObjectUploader(16);
+			Assert.assertTrue(uploader.isSmall(file.length()));
+			Assert.assertFalse(uploader.isSmall(16));
+			Assert.assertFalse(new SmallObjectUploader(0).isSmall(0));
+
+			byte[] bytes = new byte[16];
+			Assert.assertEquals(7, uploader.read(file, bytes));
+			Assert.assertEquals("content", new String(bytes, 0, 7, "UTF-8"));
+		} finally {
+			FileUtils.deleteQuietly(file);
+		}
+	}
+
+}
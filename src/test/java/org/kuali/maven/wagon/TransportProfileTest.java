@@ -0,0 +1,45 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.ClientConfiguration;
+
+public class TransportProfileTest {
+
+	@Test
+	public void apply() {
+		TransportProfile profile = new TransportProfile();
+		profile.setMaxConnections(80);
+		profile.setConnectTimeout(5000);
+		profile.setReadTimeout(30000);
+		profile.setSendBufferSize(1024 * 1024);
+		ClientConfiguration configuration = new ClientConfiguration();
+		profile.apply(configuration);
+		Assert.assertEquals(80, configuration.getMaxConnections());
+		Assert.assertEquals(5000, configuration.getConnectionTimeout());
+		Assert.assertEquals(30000, configuration.getSocketTimeout());
+		Assert.assertEquals(1024 * 1024, configuration.getSocketBufferSizeHints()[0]);
+	}
+
+	@Test
+	public void unsupported() {
+		Assert.assertFalse(TransportProfile.set(new ClientConfiguration(), "setNoSuchSetting", long.class, 1L));
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+public class UploadJournalTest {
+
+	@Test
+	public void saveLoadMatch() throws IOException {
+		File dir = new File(FileUtils.getTempDirectory(), "upload-journal-" + System.nanoTime());
+		File source = new File(dir, "artifact.jar");
+		try {
+			FileUtils.writeStringToFile(source, "content");
+			File file = UploadJournal.getFile(dir, "bucket", "a/b/artifact.jar");
+			new UploadJournal(file, "bucket", "a/b/artifact.jar", "upload-1", source, 5).save();
+			UploadJournal journal = UploadJournal.load(file);
+			Assert.assertEquals("upload-1", journal.getUploadId());
+			Assert.assertTrue(journal.getParts().isEmpty());
+
+			journal.put(2, "etag-2");
+			journal.put(1, "etag-1");
+			UploadJournal loaded = UploadJournal.load(file);
+			Assert.assertEquals(2, loaded.getParts().size());
+			Assert.assertEquals("etag-2", loaded.getParts().get(2));
+			Assert.assertEquals(1, UploadJournal.list(dir).size());
+
+			Assert.assertTrue(loaded.matches(source, 5));
+			Assert.assertFalse(loaded.matches(source, 6));
+			Assert.assertEquals(0, UploadJournal.list(dir, file.lastModified()).size());
+
+			// Same size and timestamp, different content
+			long lastModified = source.lastModified();
+			FileUtils.writeStringToFile(source, "CONTENT");
+			source.setLastModified(lastModified);
+			Assert.assertFalse(loaded.matches(source, 5));
+
+			FileUtils.writeStringToFile(source, "changed content");
+			Assert.assertFalse(loaded.matches(source, 5));
+
+			loaded.delete();
+			Assert.assertNull(UploadJournal.load(file));
+		} finally {
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+	@Test
+	public void changedPartsAreNotReused() throws IOException {
+		File dir = new File(FileUtils.getTempDirectory(), "upload-journal-" + System.nanoTime());
+		File source = new File(dir, "artifact.jar");
+		try {
+			FileUtils.writeStringToFile(source, "aaaaabbbbbccc");
+			UploadJournal journal = new UploadJournal(UploadJournal.getFile(dir, "bucket", "key"), "bucket", "key", "upload-1", source, 5);
+			final List<PartSummary> parts = new ArrayList<PartSummary>();
+			for (String content : new String[] { "aaaaa", "bbbbb" }) {
+				PartSummary part = new PartSummary();
+				part.setPartNumber(parts.size() + 1);
+				part.setETag("\"" + Hashing.md5().hashString(content, Charsets.UTF_8) + "\"");
+				part.setSize(5);
+				parts.add(part);
+				journal.put(part.getPartNumber(), StringUtils.remove(part.getETag(), '"'));
+			}
+			Assert.assertTrue(journal.isUnchanged(source, 2, parts.get(1).getETag()));
+
+			// The first part and the length are the same, the second part is not
+			long lastModified = source.lastModified();
+			FileUtils.writeStringToFile(source, "aaaaaBBBBBccc");
+			source.setLastModified(lastModified);
+			Assert.assertTrue(journal.matches(source, 5));
+			Assert.assertFalse(journal.isUnchanged(source, 2, parts.get(1).getETag()));
+
+			AmazonS3Client client = new AmazonS3Client() {
+				@Override
+				public PartListing listParts(ListPartsRequest request) {
+					PartListing listing = new PartListing();
+					listing.setParts(parts);
+					return listing;
+				}
+			};
+			Map<Integer, String> done = new MultipartEngine(0, 0, 1).getUploadedParts(client, journal, source);
+			Assert.assertEquals(1, done.size());
+			Assert.assertTrue(done.containsKey(1));
+		} finally {
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+}
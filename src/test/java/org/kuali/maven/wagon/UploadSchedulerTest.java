@@ -0,0 +1,185 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.kuali.common.threads.ElementHandler;
+import org.kuali.common.threads.ExecutionStatistics;
+import org.kuali.common.threads.ListIteratorContext;
+import org.kuali.common.threads.ThreadHandlerException;
+import org.kuali.common.threads.listener.NoOpListener;
+
+public class UploadSchedulerTest {
+
+	@Test
+	public void threadCount() {
+		Assert.assertEquals(10, UploadScheduler.getThreadCount(10, 50, 50, 100));
+		Assert.assertEquals(20, UploadScheduler.getThreadCount(10, 50, 50, 1000));
+		Assert.assertEquals(50, UploadScheduler.getThreadCount(10, 50, 50, 10000));
+		Assert.assertEquals(3, UploadScheduler.getThreadCount(10, 50, 50, 3));
+	}
+
+	@Test
+	public void largestFirst() {
+		Recorder recorder = new Recorder();
+		UploadScheduler<Integer> scheduler = new UploadScheduler<Integer>(recorder, new NoOpListener<Integer>(), new Descending());
+		// Queue everything before the single worker starts so the order is deterministic
+		for (Integer element : Arrays.asList(3, 9, 1, 7)) {
+			scheduler.submit(element);
+		}
+		scheduler.start(1);
+		scheduler.close();
+		ExecutionStatistics stats = scheduler.await();
+		Assert.assertEquals(Arrays.asList(9, 7, 3, 1), recorder.handled);
+		Assert.assertEquals(4, stats.getIterationCount());
+	}
+
+	@Test
+	public void handlerSubmits() {
+		final List<Integer> handled = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<UploadScheduler<Integer>> holder = new ArrayList<UploadScheduler<Integer>>();
+		ElementHandler<Integer> handler = new ElementHandler<Integer>() {
+			public void handleElement(ListIteratorContext<Integer> context, int index, Integer element) {
+				handled.add(element);
+				if (element > 1) {
+					holder.get(0).submit(element - 1);
+				}
+			}
+		};
+		UploadScheduler<Integer> scheduler = new UploadScheduler<Integer>(handler, new NoOpListener<Integer>(), new Descending());
+		holder.add(scheduler);
+		ExecutionStatistics stats = scheduler.execute(Arrays.asList(5), 4);
+		Assert.assertEquals(5, stats.getIterationCount());
+		Assert.assertEquals(5, handled.size());
+	}
+
+	@Test
+	public void dispatcher() {
+		Recorder recorder = new Recorder();
+		UploadScheduler<Integer> scheduler = new UploadScheduler<Integer>(recorder, new NoOpListener<Integer>(), new Descending());
+		scheduler.start(3, Executors.defaultThreadFactory());
+		for (int i = 0; i < 100; i++) {
+			scheduler.submit(i);
+		}
+		scheduler.close();
+		ExecutionStatistics stats = scheduler.await();
+		Assert.assertEquals(100, stats.getIterationCount());
+		Assert.assertEquals(100, recorder.handled.size());
+		Assert.assertEquals(3, stats.getThreadCount());
+	}
+
+	@Test
+	public void virtualThreads() {
+		Assume.assumeTrue(VirtualThreads.isSupported());
+		Recorder recorder = new Recorder();
+		UploadScheduler<Integer> scheduler = new UploadScheduler<Integer>(recorder, new NoOpListener<Integer>(), new Descending());
+		scheduler.start(50, VirtualThreads.getFactory("test-"));
+		for (int i = 0; i < 1000; i++) {
+			scheduler.submit(i);
+		}
+		scheduler.close();
+		Assert.assertEquals(1000, scheduler.await().getIterationCount());
+	}
+
+	@Test
+	public void bounded() {
+		Recorder recorder = new Recorder();
+		UploadScheduler<Integer> scheduler = new UploadScheduler<Integer>(recorder, new NoOpListener<Integer>(), new Descending());
+		scheduler.setCapacity(2);
+		scheduler.start(0);
+		for (int i = 0; i < 100; i++) {
+			// Blocks once two elements are waiting, so workers have to be added as we go
+			scheduler.grow(UploadScheduler.getThreadCount(1, 4, 10, i + 1));
+			scheduler.put(i);
+		}
+		scheduler.close();
+		ExecutionStatistics stats = scheduler.await();
+		Assert.assertEquals(100, stats.getIterationCount());
+		Assert.assertEquals(4, stats.getThreadCount());
+	}
+
+	@Test
+	public void cancel() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Integer> handled = Collections.synchronizedList(new ArrayList<Integer>());
+		ElementHandler<Integer> handler = new ElementHandler<Integer>() {
+			public void handleElement(ListIteratorContext<Integer> context, int index, Integer element) {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				handled.add(element);
+			}
+		};
+		final UploadScheduler<Integer> scheduler = new UploadScheduler<Integer>(handler, new NoOpListener<Integer>(), new Descending());
+		for (int i = 0; i < 10; i++) {
+			scheduler.submit(i);
+		}
+		scheduler.start(1);
+		started.await();
+		Thread canceller = new Thread() {
+			@Override
+			public void run() {
+				scheduler.cancel();
+			}
+		};
+		canceller.start();
+		// Cancel waits for the element in progress and drops the rest
+		Thread.sleep(50);
+		Assert.assertTrue(canceller.isAlive());
+		release.countDown();
+		canceller.join();
+		Assert.assertEquals(Arrays.asList(9), handled);
+	}
+
+	@Test(expected = ThreadHandlerException.class)
+	public void failure() {
+		ElementHandler<Integer> handler = new ElementHandler<Integer>() {
+			public void handleElement(ListIteratorContext<Integer> context, int index, Integer element) {
+				throw new IllegalStateException("boom");
+			}
+		};
+		new UploadScheduler<Integer>(handler, new NoOpListener<Integer>(), new Descending()).execute(Arrays.asList(1, 2, 3), 2);
+	}
+
+	protected static class Recorder implements ElementHandler<Integer> {
+		List<Integer> handled = Collections.synchronizedList(new ArrayList<Integer>());
+
+		public void handleElement(ListIteratorContext<Integer> context, int index, Integer element) {
+			handled.add(element);
+		}
+	}
+
+	protected static class Descending implements Comparator<Integer> {
+		public int compare(Integer one, Integer two) {
+			return two.compareTo(one);
+		}
+	}
+
+}
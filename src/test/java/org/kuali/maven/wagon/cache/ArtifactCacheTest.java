@@ -0,0 +1,79 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArtifactCacheTest {
+
+	@Test
+	public void putGetEvict() throws IOException {
+		File dir = new File(FileUtils.getTempDirectory(), "artifact-cache-" + System.nanoTime());
+		File source = File.createTempFile("artifact", ".jar");
+		try {
+			FileUtils.writeStringToFile(source, "0123456789");
+			ArtifactCache cache = ArtifactCache.getInstance(dir, 25);
+
+			cache.put("bucket", "release/a.jar", "aaa", source);
+			ArtifactCache.Entry entry = cache.get("bucket", "release/a.jar");
+			Assert.assertNotNull(entry);
+			Assert.assertEquals("aaa", entry.getETag());
+			Assert.assertEquals(10, entry.getFile().length());
+			Assert.assertNull(cache.get("bucket", "release/b.jar"));
+
+			// A new ETag replaces the old entry
+			cache.put("bucket", "release/a.jar", "bbb", source);
+			Assert.assertEquals("bbb", cache.get("bucket", "release/a.jar").getETag());
+			Assert.assertEquals(10, cache.getSize());
+
+			// The least recently used entry goes once the cache is full
+			cache.get("bucket", "release/a.jar").getFile().setLastModified(System.currentTimeMillis() - 60000);
+			cache.put("bucket", "release/b.jar", "ccc", source);
+			cache.put("bucket", "release/c.jar", "ddd", source);
+			Assert.assertNull(cache.get("bucket", "release/a.jar"));
+			Assert.assertNotNull(cache.get("bucket", "release/b.jar"));
+			Assert.assertNotNull(cache.get("bucket", "release/c.jar"));
+		} finally {
+			source.delete();
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+	@Test
+	public void sharedLimit() throws IOException {
+		File dir = new File(FileUtils.getTempDirectory(), "artifact-cache-" + System.nanoTime());
+		File source = File.createTempFile("artifact", ".jar");
+		try {
+			FileUtils.writeStringToFile(source, "0123456789");
+			// Two instances stand in for two builds sharing the cache directory
+			ArtifactCache one = new ArtifactCache(dir, 25);
+			ArtifactCache two = new ArtifactCache(dir, 25);
+			one.put("bucket", "a.jar", "aaa", source);
+			two.put("bucket", "b.jar", "bbb", source);
+			one.put("bucket", "c.jar", "ccc", source);
+			Assert.assertTrue(one.getSize() <= 25);
+		} finally {
+			source.delete();
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+}
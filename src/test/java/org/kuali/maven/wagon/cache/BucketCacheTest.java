@@ -0,0 +1,49 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon.cache;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BucketCacheTest {
+
+	@Test
+	public void putGetExpire() throws InterruptedException {
+		File dir = new File(FileUtils.getTempDirectory(), "bucket-cache-" + System.nanoTime());
+		File file = new File(dir, "buckets.properties");
+		try {
+			BucketCache cache = new BucketCache(file, 60000);
+			Assert.assertNull(cache.get("AKIA/bucket"));
+			cache.put("AKIA/bucket", "s3-eu-west-1.amazonaws.com");
+			cache.put("AKIA/other", null);
+
+			// Shared with every other build through the file
+			BucketCache shared = new BucketCache(file, 60000);
+			Assert.assertEquals("s3-eu-west-1.amazonaws.com", shared.get("AKIA/bucket").getEndpoint());
+			Assert.assertNull(shared.get("AKIA/other").getEndpoint());
+
+			Thread.sleep(20);
+			Assert.assertNull(new BucketCache(file, 10).get("AKIA/bucket"));
+			Assert.assertNull(new BucketCache(file, 0).get("AKIA/bucket"));
+		} finally {
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon.cache;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NegativeCacheTest {
+
+	@Test
+	public void policies() {
+		Assert.assertEquals(0, NegativeCache.getTtl("always"));
+		Assert.assertEquals(24 * 60 * 60 * 1000, NegativeCache.getTtl("daily"));
+		Assert.assertEquals(Long.MAX_VALUE, NegativeCache.getTtl("never"));
+		Assert.assertEquals(30 * 60 * 1000, NegativeCache.getTtl("interval:30"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownPolicy() {
+		NegativeCache.getTtl("interval:soon");
+	}
+
+	@Test
+	public void markExpireClear() {
+		File dir = new File(FileUtils.getTempDirectory(), "negative-cache-" + System.nanoTime());
+		try {
+			NegativeCache cache = new NegativeCache(dir, 60000);
+			Assert.assertFalse(cache.isAbsent("bucket", "release/a.pom"));
+			cache.markAbsent("bucket", "release/a.pom");
+			Assert.assertTrue(cache.isAbsent("bucket", "release/a.pom"));
+			Assert.assertFalse(cache.isAbsent("other", "release/a.pom"));
+
+			cache.clear("bucket", "release/a.pom");
+			Assert.assertFalse(cache.isAbsent("bucket", "release/a.pom"));
+
+			// Markers older than the ttl are ignored
+			cache.markAbsent("bucket", "release/b.pom");
+			cache.getMarker("bucket", "release/b.pom").setLastModified(System.currentTimeMillis() - 120000);
+			Assert.assertFalse(cache.isAbsent("bucket", "release/b.pom"));
+		} finally {
+			FileUtils.deleteQuietly(dir);
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2010-2015 The Kuali Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/ecl2.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kuali.maven.wagon.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.google.common.base.Optional;
+
+public class ObjectMetadataCacheTest {
+
+	@Test
+	public void cachesHitsAndMisses() {
+		CountingClient client = new CountingClient();
+		ObjectMetadataCache cache = new ObjectMetadataCache(60000, 100);
+		Assert.assertTrue(cache.get(client, "bucket", "a.jar").isPresent());
+		Assert.assertTrue(cache.get(client, "bucket", "a.jar").isPresent());
+		// A 404 is remembered too
+		Assert.assertFalse(cache.get(client, "bucket", "missing.jar").isPresent());
+		Assert.assertFalse(cache.get(client, "bucket", "missing.jar").isPresent());
+		Assert.assertEquals(2, client.requests.get());
+
+		cache.invalidate("bucket", "a.jar");
+		cache.get(client, "bucket", "a.jar");
+		Assert.assertEquals(3, client.requests.get());
+	}
+
+	@Test
+	public void expires() throws InterruptedException {
+		CountingClient client = new CountingClient();
+		ObjectMetadataCache cache = new ObjectMetadataCache(10, 100);
+		cache.get(client, "bucket", "a.jar");
+		Thread.sleep(50);
+		cache.get(client, "bucket", "a.jar");
+		Assert.assertEquals(2, client.requests.get());
+
+		// Nothing is kept with a ttl of zero
+		cache = new ObjectMetadataCache(0, 100);
+		cache.get(client, "bucket", "a.jar");
+		cache.get(client, "bucket", "a.jar");
+		Assert.assertEquals(4, client.requests.get());
+	}
+
+	@Test(expected = AmazonS3Exception.class)
+	public void errorsAreNotCached() {
+		CountingClient client = new CountingClient();
+		ObjectMetadataCache cache = new ObjectMetadataCache(60000, 100);
+		try {
+			cache.get(client, "bucket", "forbidden.jar");
+		} catch (AmazonS3Exception e) {
+			Assert.assertEquals(403, e.getStatusCode());
+		}
+		cache.get(client, "bucket", "forbidden.jar");
+	}
+
+	@Test
+	public void sharesConcurrentRequests() throws InterruptedException {
+		final CountingClient client = new CountingClient();
+		client.latch = new CountDownLatch(1);
+		final ObjectMetadataCache cache = new ObjectMetadataCache(0, 100);
+		final List<Optional<ObjectMetadata>> results = new ArrayList<Optional<ObjectMetadata>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					Optional<ObjectMetadata> metadata = cache.get(client, "bucket", "a.jar");
+					synchronized (results) {
+						results.add(metadata);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		// Give every thread time to ask before the single request returns
+		Thread.sleep(100);
+		client.latch.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(4, results.size());
+		Assert.assertEquals(1, client.requests.get());
+	}
+
+	protected static class CountingClient extends AmazonS3Client {
+		AtomicInteger requests = new AtomicInteger();
+		CountDownLatch latch;
+
+		@Override
+		public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+			requests.incrementAndGet();
+			if (latch != null) {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (key.startsWith("missing")) {
+				throw exception(404);
+			}
+			if (key.startsWith("forbidden")) {
+				throw exception(403);
+			}
+			return new ObjectMetadata();
+		}
+
+		protected AmazonS3Exception exception(int status) {
+			AmazonS3Exception e = new AmazonS3Exception("Status " + status);
+			e.setStatusCode(status);
+			return e;
+		}
+	}
+
+}